@@ -1,6 +1,6 @@
 package fasttext;
 
-import fasttext.store.InputStreamFastTextInput;
+import fasttext.store.FastTextInput;
 import fasttext.store.OutputStreamFastTextOutput;
 
 import java.io.IOException;
@@ -194,7 +194,7 @@ public class Args {
     os.writeDouble(t);
   }
 
-  public static Args load(InputStreamFastTextInput is) throws IOException {
+  public static Args load(FastTextInput is) throws IOException {
     int dim = is.readInt();
     int ws = is.readInt();
     int epoch = is.readInt();
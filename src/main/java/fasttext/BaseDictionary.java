@@ -1,6 +1,7 @@
 package fasttext;
 
 import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
 import com.google.common.primitives.UnsignedLong;
 import fasttext.util.Randoms;
 
@@ -8,7 +9,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.*;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /** Base class for fastText dictionary implementation */
 public abstract class BaseDictionary implements Cloneable, Closeable {
@@ -111,6 +114,11 @@ public abstract class BaseDictionary implements Cloneable, Closeable {
       subwords = sw;
     }
 
+    /**
+     * Subwords of the entry when they are stored with it: by memory-mapped dictionaries, and by
+     * in-memory dictionaries for the entries which are not precomputed, once accessed.
+     * Otherwise {@code null}, use {@link BaseDictionary#getSubwords(int)} instead.
+     */
     public List<Integer> subwords() {
       return subwords;
     }
@@ -247,19 +255,78 @@ public abstract class BaseDictionary implements Cloneable, Closeable {
   public boolean isPruned() { return pruneIdxSize >= 0; }
 
   protected void initSubwords() {
-    for (int i = 0; i < size; i++) {
-      Entry e = getEntry(i);
-      String word = BOW + e.word + EOW;
-      if (e.subwords == null) {
-        e.subwords = new ArrayList<>();
-      } else {
-        e.subwords.clear();
+    initSubwords(1);
+  }
+
+  /** Computes the subwords of every entry, over threads ranges of entries. */
+  protected void initSubwords(int threads) {
+    initSubwords(size, threads);
+  }
+
+  /** Computes the subwords of the first count entries, over threads ranges of entries. */
+  protected void initSubwords(int count, int threads) {
+    forEachRange(Math.min(count, size), threads, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        getEntry(i).subwords = computeEntrySubwords(i);
       }
-      e.subwords.add(i);
-      if (!e.word.equals(EOS)) {
-        computeSubwords(word, e.subwords);
+    });
+  }
+
+  /** Subwords of an entry: its id followed by the ids of its char n-grams, backed by an int array. */
+  protected List<Integer> computeEntrySubwords(int id) {
+    IntArrayBuilder ngrams = new IntArrayBuilder();
+    computeEntrySubwords(id, ngrams);
+    return Ints.asList(ngrams.toArray());
+  }
+
+  /** Passes the subwords of an entry to ngrams, without boxing them. */
+  protected void computeEntrySubwords(int id, IntConsumer ngrams) {
+    Entry e = getEntry(id);
+    ngrams.accept(id);
+    if (!e.word.equals(EOS)) {
+      computeSubwords(BOW + e.word + EOW, ngrams);
+    }
+  }
+
+  /** Growable array of ints. */
+  protected static final class IntArrayBuilder implements IntConsumer {
+
+    private int[] values = new int[16];
+    private int size = 0;
+
+    @Override
+    public void accept(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
       }
+      values[size++] = value;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+
+  }
+
+  /** Runs action over partitions [from, to) of [0, size), in parallel if threads is greater than 1. */
+  protected static void forEachRange(int size, int threads, RangeAction action) {
+    final int partitions = Math.max(1, Math.min(threads, size / 1024));
+    if (partitions == 1) {
+      action.run(0, size);
+      return;
     }
+    IntStream.range(0, partitions)
+      .parallel()
+      .forEach(p -> action.run((int) ((long) size * p / partitions), (int) ((long) size * (p + 1) / partitions)));
+  }
+
+  @FunctionalInterface
+  protected interface RangeAction {
+    void run(int from, int to);
   }
 
   protected void initTableDiscard() {
@@ -339,6 +406,10 @@ public abstract class BaseDictionary implements Cloneable, Closeable {
   }
 
   protected void pushHash(List<Integer> hashes, int id) {
+    pushHash((IntConsumer) hashes::add, id);
+  }
+
+  protected void pushHash(IntConsumer hashes, int id) {
     if (pruneIdxSize == 0 || id < 0) {
       return;
     }
@@ -350,10 +421,14 @@ public abstract class BaseDictionary implements Cloneable, Closeable {
         return;
       }
     }
-    hashes.add(nWords + id);
+    hashes.accept(nWords + id);
   }
 
   protected void computeSubwords(String word, List<Integer> ngrams) {
+    computeSubwords(word, (IntConsumer) ngrams::add);
+  }
+
+  protected void computeSubwords(String word, IntConsumer ngrams) {
     for(int i = 0; i < word.length(); i++) {
       StringBuilder ngram = new StringBuilder();
       if (!charMatches(word.charAt(i))) {
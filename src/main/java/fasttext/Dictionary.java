@@ -1,7 +1,8 @@
 package fasttext;
 
 import com.google.common.base.Preconditions;
-import fasttext.store.InputStreamFastTextInput;
+import com.google.common.primitives.Ints;
+import fasttext.store.FastTextInput;
 import fasttext.store.OutputStreamFastTextOutput;
 import fasttext.store.OutputStreamResourceOutput;
 
@@ -9,6 +10,7 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Implementation class of {@link BaseDictionary} using fastText model */
 public class Dictionary extends BaseDictionary {
@@ -17,6 +19,10 @@ public class Dictionary extends BaseDictionary {
   private final Map<Long, Integer> word2int;
   private final Map<Integer, Integer> pruneIdx;
 
+  // subwords of the precomputed entries, flattened, see precomputeSubwords
+  private final int[] subwordOffsets;
+  private final int[] subwordIds;
+
   private Dictionary(Args args,
                      int size,
                      int nWords,
@@ -24,14 +30,17 @@ public class Dictionary extends BaseDictionary {
                      long nTokens,
                      int pruneIdxSize,
                      Entry[] words,
-                     Map<Integer, Integer> pruneIdx) {
+                     Map<Integer, Integer> pruneIdx,
+                     int threads,
+                     int precomputedSubwords) {
     super(args, size, nWords, nLabels, nTokens, pruneIdxSize);
     this.words = words;
     this.word2int = new HashMap<>(word2intSize);
     this.pruneIdx = pruneIdx;
-    initWord2int();
+    initWord2int(threads);
     initTableDiscard();
-    initSubwords();
+    this.subwordOffsets = new int[Math.min(precomputedSubwords, size) + 1];
+    this.subwordIds = precomputeSubwords(subwordOffsets, threads);
   }
 
   @Override
@@ -80,17 +89,87 @@ public class Dictionary extends BaseDictionary {
   @Override
   public List<Integer> getSubwords(int id) {
     Preconditions.checkPositionIndex(id, nWords);
-    return words[id].subwords;
+    return entrySubwords(id);
+  }
+
+  /** Subwords of an entry, computed on first access if they were not precomputed. */
+  private List<Integer> entrySubwords(int id) {
+    if (id < subwordOffsets.length - 1) {
+      return Ints.asList(subwordIds).subList(subwordOffsets[id], subwordOffsets[id + 1]);
+    }
+    Entry e = words[id];
+    List<Integer> subwords = e.subwords;
+    if (subwords == null) {
+      // concurrent callers may both compute the list, which is immutable and safely published
+      subwords = computeEntrySubwords(id);
+      e.subwords = subwords;
+    }
+    return subwords;
+  }
+
+  /**
+   * Computes the subwords of the first offsets.length - 1 entries, over threads ranges of entries,
+   * into a single array of ids, so that precomputed entries do not hold an array and a list each.
+   * @return the ids, entry i has the ids [offsets[i], offsets[i + 1])
+   */
+  private int[] precomputeSubwords(int[] offsets, int threads) {
+    int count = offsets.length - 1;
+    Map<Integer, int[]> ranges = new ConcurrentHashMap<>();
+    forEachRange(count, threads, (from, to) -> {
+      IntArrayBuilder ids = new IntArrayBuilder();
+      for (int i = from; i < to; i++) {
+        computeEntrySubwords(i, ids);
+        offsets[i + 1] = ids.size();
+      }
+      ranges.put(from, ids.toArray());
+    });
+    List<Integer> starts = new ArrayList<>(ranges.keySet());
+    Collections.sort(starts);
+    int length = 0;
+    for (int[] range : ranges.values()) {
+      length += range.length;
+    }
+    int[] ids = new int[length];
+    int pos = 0;
+    for (int r = 0; r < starts.size(); r++) {
+      int from = starts.get(r);
+      int to = r + 1 < starts.size() ? starts.get(r + 1) : count;
+      int[] range = ranges.get(from);
+      System.arraycopy(range, 0, ids, pos, range.length);
+      // offsets are relative to the range
+      for (int i = from; i < to; i++) {
+        offsets[i + 1] += pos;
+      }
+      pos += range.length;
+    }
+    return ids;
   }
 
-  private void initWord2int() {
+  private void initWord2int(int threads) {
+    // words are hashed in parallel, but inserted in order, as collisions are resolved by probing
+    long[] hashes = new long[size];
+    forEachRange(size, threads, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        hashes[i] = hash(words[i].word);
+      }
+    });
     for (int i = 0; i < size; i++) {
-      Entry e = getEntry(i);
-      word2int.put(find(e.word), i);
+      word2int.put(find(words[i].word, hashes[i]), i);
     }
   }
 
-  public static Dictionary load(Args args, InputStreamFastTextInput is) throws IOException {
+  public static Dictionary load(Args args, FastTextInput is) throws IOException {
+    return load(args, is, 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Loads a dictionary, computing the word hashes and subwords with the given number of threads.
+   * @param precomputedSubwords number of entries whose subwords are computed at load time,
+   *                            the most frequent ones. The subwords of the other entries are
+   *                            computed on first access.
+   */
+  public static Dictionary load(Args args, FastTextInput is, int threads, int precomputedSubwords)
+    throws IOException {
     int size = is.readInt();
     int nWords = is.readInt();
     int nLabels = is.readInt();
@@ -114,7 +193,22 @@ public class Dictionary extends BaseDictionary {
         pruneIdx.put(first, second);
       }
     }
-    return new Dictionary(args, size, nWords, nLabels, nTokens, pruneIdxSize, words, pruneIdx);
+    return new Dictionary(args, size, nWords, nLabels, nTokens, pruneIdxSize, words, pruneIdx,
+      threads, precomputedSubwords);
+  }
+
+  /** Skips a dictionary, without decoding its words. */
+  public static void skip(FastTextInput is) throws IOException {
+    int size = is.readInt();
+    is.skipBytes(2 * Integer.BYTES + Long.BYTES);
+    long pruneIdxSize = is.readLong();
+    for (int i = 0; i < size; i++) {
+      is.skipString();
+      is.skipBytes(Long.BYTES + Byte.BYTES);
+    }
+    if (pruneIdxSize > 0) {
+      is.skipBytes(pruneIdxSize * 2 * Integer.BYTES);
+    }
   }
 
   public void save(OutputStreamFastTextOutput os) throws IOException {
@@ -158,8 +252,8 @@ public class Dictionary extends BaseDictionary {
       if (e.word().getBytes(StandardCharsets.UTF_8).length > maxStringLength) {
         maxStringLength = e.word().getBytes(StandardCharsets.UTF_8).length;
       }
-      if (e.subwords().size() > maxSubwordsSize) {
-        maxSubwordsSize = e.subwords().size();
+      if (entrySubwords(i).size() > maxSubwordsSize) {
+        maxSubwordsSize = entrySubwords(i).size();
       }
     }
     int wordByteArrayLength = maxStringLength;
@@ -213,11 +307,12 @@ public class Dictionary extends BaseDictionary {
         fos.writeIntAsByte(e.type().getValue());
         // write subwords
         ByteBuffer subwordsBuffer = ByteBuffer.allocate(subwordsByteArrayLength);
-        for (int subword : e.subwords()) {
+        List<Integer> subwords = entrySubwords(i);
+        for (int subword : subwords) {
           subwordsBuffer.putInt(subword);
         }
         subwordsBuffer.flip();
-        fos.writeInt(e.subwords().size());
+        fos.writeInt(subwords.size());
         fos.writeBytes(subwordsBuffer.array(), subwordsByteArrayLength);
       }
     }
@@ -1,21 +1,60 @@
 package fasttext;
 
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
+import fasttext.index.HnswIndex;
+import fasttext.index.NNIndex;
+import fasttext.index.NeighborQueue;
+import fasttext.mmap.HotRowsProfile;
 import fasttext.mmap.MMapDictionary;
 import fasttext.mmap.MMapMatrix;
+import fasttext.mmap.MMapMatrixFormat;
+import fasttext.mmap.MMapModelFile;
+import fasttext.mmap.MMapModelFile.Section;
+import fasttext.mmap.MMapModelFile.SectionWriter;
 import fasttext.mmap.MMapQMatrix;
-import fasttext.store.InputStreamFastTextInput;
+import fasttext.mmap.WarmableMatrix;
+import fasttext.store.ChannelFastTextInput;
+import fasttext.store.FastTextInput;
 import fasttext.store.MMapFile;
 import fasttext.store.OutputStreamFastTextOutput;
+import fasttext.store.PipelinedFastTextInput;
+import fasttext.store.ResourceInput;
+import fasttext.util.VectorUtil;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Java FastText implementation.
@@ -47,6 +86,23 @@ public class FastText {
   public static int FASTTEXT_VERSION = 12; /* Version 1b */
   public static int FASTTEXT_FILEFORMAT_MAGIC_INT = 793712314;
 
+  private static final String MODEL_BIN_FILENAME = "model.bin";
+  private static final String MODEL_FTZ_FILENAME = "model.ftz";
+  private static final String DICTIONARY_FILENAME = "dict.mmap";
+  private static final String INPUT_FILENAME = "in.mmap";
+  private static final String NN_INDEX_FILENAME = "nn.hnsw";
+  private static final String LABEL_INDEX_FILENAME = "labels.hnsw";
+  private static final String WORD_VECTORS_FILENAME = "wordvecs.mmap";
+  private static final String GZIP_SUFFIX = ".gz";
+  private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+  /** Number of queries of batch queries scored together */
+  private static final int QUERY_BLOCK_SIZE = 64;
+  /** Number of word vectors scored against a block of queries at a time */
+  private static final int ROW_TILE_SIZE = 128;
+  /** Parts of a binary model read concurrently: the dictionary and the input matrix */
+  private static final int PARALLEL_LOAD_TASKS = 2;
+
   private final static Logger logger = Logger.getLogger(FastText.class.getName());
 
   private final Args args;
@@ -64,7 +120,24 @@ public class FastText {
   private final boolean quant;
   private final boolean mmap;
 
-  private Matrix wordVectors = null;
+  private volatile ReadableMatrix wordVectors = null;
+  private MappedResource wordVectorsResource = null;
+  private final Object wordVectorsLock = new Object();
+  private final AtomicInteger wordVectorsDone = new AtomicInteger();
+
+  private boolean quantizedSearch = false;
+  private int quantizedSearchRerank = 0;
+  private volatile float[] wordNorms = null;
+
+  private volatile NNIndex nnIndex = null;
+  private volatile MappedResource nnIndexResource = null;
+  private int nnThreads = 1;
+
+  private volatile MappedResource labelIndexResource = null;
+  private MMapModelFile modelFile = null;
+  private final Object labelIndexLock = new Object();
+
+  private volatile Cache<PredictionKey, List<FastTextPrediction>> predictionCache = null;
 
   private FastText(Args args,
                    int version,
@@ -95,6 +168,12 @@ public class FastText {
                            ReadableQMatrix qinput,
                            QMatrix qoutput) {
     Model m = new Model(args, 0, input, output, quant, qout, qinput, qoutput);
+    if (model != null) {
+      m.setSoftmaxPruning(model.getSoftmaxPruning());
+      m.setNormalizePredictions(model.getNormalizePredictions());
+      m.setLabelIndex(model.getLabelIndex());
+      m.setLabelCandidates(model.getLabelCandidates());
+    }
     if (args.getModel() == Args.ModelName.SUP) {
       m.setTargetCounts(Longs.toArray(dict.getCounts(Dictionary.EntryType.LABEL)));
     } else {
@@ -109,6 +188,177 @@ public class FastText {
 
   public Args getArgs() { return this.args; }
 
+  /**
+   * Set to {@code true} to run nearest neighbor and analogy queries of quantized models
+   * directly on the quantized input matrix, instead of precomputing the whole word vectors matrix.
+   * The query is scored against the product quantization codes of every word through lookup tables
+   * of the dot products of the query with the quantizer centroids.
+   * Only the norms of the word vectors are precomputed.
+   */
+  public void setQuantizedSearch(boolean quantizedSearch) {
+    this.quantizedSearch = quantizedSearch;
+  }
+
+  public boolean getQuantizedSearch() {
+    return this.quantizedSearch;
+  }
+
+  /**
+   * Number of best candidates of the quantized search to re-rank with the decoded word vectors.
+   * Defaults to 0, no re-ranking.
+   * @see #setQuantizedSearch(boolean)
+   */
+  public void setQuantizedSearchRerank(int rerank) {
+    Preconditions.checkArgument(rerank >= 0);
+    this.quantizedSearchRerank = rerank;
+  }
+
+  /**
+   * Set to {@code true} to compute the top-k labels of softmax and negative sampling models
+   * without scoring every label, using bounds on the scores given by the output rows norms.
+   * Predictions are unchanged.
+   * @see Model#setSoftmaxPruning(boolean)
+   */
+  public void setSoftmaxPruning(boolean softmaxPruning) {
+    model.setSoftmaxPruning(softmaxPruning);
+  }
+
+  /**
+   * Set to {@code false} to return unnormalized label scores instead of log-probabilities
+   * when softmax pruning is enabled and the threshold is 0, which saves scoring the pruned labels.
+   * @see Model#setNormalizePredictions(boolean)
+   */
+  public void setNormalizePredictions(boolean normalizePredictions) {
+    model.setNormalizePredictions(normalizePredictions);
+    invalidatePredictionCache();
+  }
+
+  /**
+   * Builds an HNSW maximum inner product index over the output rows of softmax and negative
+   * sampling models. Unnormalized predictions then only score the candidate labels retrieved
+   * from the index, see {@link Model#setLabelIndex(NNIndex)}.
+   * @param maxConn maximum number of neighbors per node of the graph
+   * @param beamWidth number of candidates explored when inserting a label
+   */
+  public void buildLabelIndex(int maxConn, int beamWidth) {
+    logger.info("Building label index...");
+    long start = System.nanoTime();
+    model.buildLabelIndex(maxConn, beamWidth);
+    labelIndexResource = null;
+    invalidatePredictionCache();
+    double took = (System.nanoTime() - start) / 1000000000d;
+    logger.info(String.format(Locale.ENGLISH, "Done. Label index built (%.3fs).", took));
+  }
+
+  public void buildLabelIndex() {
+    buildLabelIndex(HnswIndex.DEFAULT_MAX_CONN, HnswIndex.DEFAULT_BEAM_WIDTH);
+  }
+
+  /**
+   * Sets the label index, or {@code null} to score every label.
+   * The index must be built over {@link Model#labelIndexVectors()}.
+   */
+  public void setLabelIndex(NNIndex labelIndex) {
+    model.setLabelIndex(labelIndex);
+    labelIndexResource = null;
+    invalidatePredictionCache();
+  }
+
+  public NNIndex getLabelIndex() {
+    ensureLabelIndex();
+    return model.getLabelIndex();
+  }
+
+  /**
+   * Number of candidate labels retrieved from the label index and scored,
+   * {@link Model#DEFAULT_LABEL_CANDIDATES} by default. Higher values give more accurate predictions.
+   */
+  public void setLabelCandidates(int labelCandidates) {
+    model.setLabelCandidates(labelCandidates);
+    invalidatePredictionCache();
+  }
+
+  /** Saves the label index to a file. */
+  public void saveLabelIndex(String filename) throws IOException {
+    NNIndex labelIndex = getLabelIndex();
+    Preconditions.checkState(labelIndex != null, "No label index to save");
+    File f = new File(filename);
+    ensureFilePath(f);
+    try (OutputStream os = new FileOutputStream(f)) {
+      labelIndex.save(os);
+    }
+  }
+
+  /** Loads an HNSW label index saved by {@link #saveLabelIndex(String)}. */
+  public void loadLabelIndex(String filename) throws IOException {
+    loadLabelIndex(MappedResource.of(new File(filename)));
+  }
+
+  private void loadLabelIndex(MappedResource resource) throws IOException {
+    logger.info("Loading label index from " + resource);
+    try (ResourceInput in = resource.open()) {
+      model.setLabelIndex(HnswIndex.load(in, model.labelIndexVectors()));
+    }
+    labelIndexResource = null;
+    invalidatePredictionCache();
+  }
+
+  private void ensureLabelIndex() {
+    if (labelIndexResource != null) {
+      synchronized (labelIndexLock) {
+        if (labelIndexResource != null) {
+          try {
+            loadLabelIndex(labelIndexResource);
+          } catch (IOException e) {
+            throw new IllegalStateException("Could not load label index " + labelIndexResource, e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Caches the predictions of documents, so that repeated documents are not predicted again.
+   * Documents are identified by their word and n-gram ids, so documents which only differ
+   * by whitespaces share their predictions.
+   * The cache may be used concurrently.
+   * @param maximumSize maximum number of cached (document, k, threshold) predictions
+   * @param expireAfterWrite duration after which cached predictions are evicted, or 0 to keep them
+   * @param unit unit of expireAfterWrite
+   */
+  public void enablePredictionCache(long maximumSize, long expireAfterWrite, TimeUnit unit) {
+    Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+    Preconditions.checkArgument(expireAfterWrite >= 0, "expireAfterWrite must be positive or 0");
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .recordStats();
+    if (expireAfterWrite > 0) {
+      builder.expireAfterWrite(expireAfterWrite, unit);
+    }
+    predictionCache = builder.build();
+  }
+
+  public void enablePredictionCache(long maximumSize) {
+    enablePredictionCache(maximumSize, 0, TimeUnit.SECONDS);
+  }
+
+  public void disablePredictionCache() {
+    predictionCache = null;
+  }
+
+  /** Hit, miss and eviction counts of the prediction cache, or {@code null} if it is disabled. */
+  public CacheStats getPredictionCacheStats() {
+    Cache<PredictionKey, List<FastTextPrediction>> cache = predictionCache;
+    return cache != null ? cache.stats() : null;
+  }
+
+  private void invalidatePredictionCache() {
+    Cache<PredictionKey, List<FastTextPrediction>> cache = predictionCache;
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
   private void signModel(int magic, int version, OutputStreamFastTextOutput os) throws IOException {
     os.writeInt(magic);
     os.writeInt(version);
@@ -127,6 +377,25 @@ public class FastText {
   }
 
   private void predict(List<Integer> words, List<FastTextPrediction> predictions, int k, float threshold) {
+    if (!model.getNormalizePredictions() && threshold <= 0) {
+      ensureLabelIndex();
+    }
+    Cache<PredictionKey, List<FastTextPrediction>> cache = predictionCache;
+    if (cache != null && !words.isEmpty()) {
+      PredictionKey key = new PredictionKey(Ints.toArray(words), k, threshold);
+      List<FastTextPrediction> cached = cache.getIfPresent(key);
+      if (cached == null) {
+        cached = new ArrayList<>(Math.min(k, dict.nLabels()));
+        predictUncached(words, cached, k, threshold);
+        cache.put(key, Collections.unmodifiableList(cached));
+      }
+      predictions.addAll(cached);
+    } else {
+      predictUncached(words, predictions, k, threshold);
+    }
+  }
+
+  private void predictUncached(List<Integer> words, List<FastTextPrediction> predictions, int k, float threshold) {
     if (!words.isEmpty()) {
       Vector hidden = new Vector(args.getDimension());
       Vector output = new Vector(dict.nLabels());
@@ -444,262 +713,1166 @@ public class FastText {
     return vecs;
   }
 
-  private void precomputeWordVectors() {
-    if (wordVectors == null) {
-      logger.info("Precomputing word vectors...");
-      wordVectors = new Matrix(dict.nWords(), args.getDimension());
-      wordVectors.zero();
-      for (int i = 0; i < dict.nWords(); i++) {
-        String word = dict.getWord(i);
-        Vector vec = getWordVector(word);
-        float norm = vec.norm();
-        if (norm > 0) {
-          wordVectors.addRow(vec, i, 1.0f / norm);
+  /**
+   * Computes the normalized word vectors used by nearest neighbor and analogy queries,
+   * or maps them if the memory-mapped model contains them. This is done once, on the first
+   * query by default; concurrent callers wait for the computation instead of repeating it.
+   * The words are split into {@link #setNNThreads(int)} ranges computed in parallel.
+   */
+  public void precomputeWordVectors() {
+    precomputeWordVectors(dict.nWords());
+  }
+
+  /**
+   * Computes the normalized vectors of the rows most frequent words only, which is enough for
+   * queries and indexes restricted to these words (see {@link #nn(String, int, int)}).
+   * Vectors computed before are kept when more rows are needed later.
+   */
+  public void precomputeWordVectors(int rows) {
+    final int nWords = dict.nWords();
+    final int size = Math.min(Math.max(rows, 0), nWords);
+    if (wordVectors != null && wordVectors.m() >= size) {
+      logger.debug("Word vectors are already precomputed.");
+      return;
+    }
+    synchronized (wordVectorsLock) {
+      ReadableMatrix computed = wordVectors;
+      if (computed != null && computed.m() >= size) {
+        logger.debug("Word vectors are already precomputed.");
+      } else if (wordVectorsResource != null) {
+        logger.info("Loading memory-mapped word vectors from " + wordVectorsResource);
+        try {
+          wordVectors = MMapMatrixFormat.load(wordVectorsResource.file(), wordVectorsResource.open());
+        } catch (IOException e) {
+          throw new IllegalStateException("Could not load word vectors " + wordVectorsResource, e);
+        }
+        wordVectorsDone.set(nWords);
+      } else {
+        logger.info("Precomputing word vectors...");
+        long start = System.nanoTime();
+        final Matrix vectors = new Matrix(size, args.getDimension());
+        vectors.zero();
+        final int from = computed == null ? 0 : computed.m();
+        Vector row = new Vector(args.getDimension());
+        for (int i = 0; i < from; i++) {
+          row.zero();
+          row.addRow(computed, i);
+          vectors.addRow(row, i, 1.0f);
         }
+        final int partitions = Math.min(nnThreads, Math.max((size - from) / 1024, 1));
+        wordVectorsDone.set(from);
+        IntStream.range(0, partitions)
+          .parallel()
+          .forEach(p -> computeWordVectors(vectors,
+            from + (int) ((long) (size - from) * p / partitions),
+            from + (int) ((long) (size - from) * (p + 1) / partitions)));
+        wordVectors = vectors;
+        double took = (System.nanoTime() - start) / 1000000000d;
+        logger.info(String.format(Locale.ENGLISH, "Done. Word vectors precomputed (%.3fs).", took));
       }
-      logger.info("Done. Word vectors precomputed.");
-    } else {
-      logger.debug("Word vectors are already precomputed.");
     }
   }
 
-  private List<FastTextSynonym> findNN(Vector queryVec, int k, Set<String> banSet) {
-    precomputeWordVectors();
-    float queryNorm = queryVec.norm();
-    if (Math.abs(queryNorm) < 1e-8) {
-      queryNorm = 1.0f;
-    }
-    MinMaxPriorityQueue<Pair<Float, String>> heap = MinMaxPriorityQueue
-      .orderedBy(new Model.HeapComparator<String>())
-      .expectedSize(dict.nLabels())
-      .create();
-    for (int i = 0; i < dict.nWords(); i++) {
-      String word = dict.getWord(i);
-      float dp = wordVectors.dotRow(queryVec, i);
-      heap.add(new Pair<>(dp / queryNorm, word));
+  /**
+   * Starts {@link #precomputeWordVectors()} in a background thread, e.g. right after loading
+   * the model so that the first query does not wait for it.
+   * @return the future completed when word vectors are available
+   */
+  public Future<?> precomputeWordVectorsAsync() {
+    FutureTask<Void> task = new FutureTask<>(this::precomputeWordVectors, null);
+    Thread thread = new Thread(task, "fasttext-word-vectors");
+    thread.setDaemon(true);
+    thread.start();
+    return task;
+  }
+
+  /** Returns true when the vectors of every word are precomputed or mapped. */
+  public boolean isWordVectorsReady() {
+    ReadableMatrix vectors = wordVectors;
+    return vectors != null && vectors.m() >= dict.nWords();
+  }
+
+  /** Returns the fraction of word vectors computed so far, between 0 and 1. */
+  public float getWordVectorsProgress() {
+    if (isWordVectorsReady()) {
+      return 1.0f;
     }
-    List<FastTextSynonym> syns = new ArrayList<>();
-    int i = 0;
-    while (i < k && heap.size() > 0) {
-      Pair<Float, String> synonym = heap.pollFirst();
-      boolean banned = banSet.contains(synonym.last());
-      if (!banned) {
-        syns.add(new FastTextSynonym(synonym.last(), synonym.first()));
-        i++;
+    int nWords = dict.nWords();
+    return nWords == 0 ? 0.0f : Math.min(1.0f, (float) wordVectorsDone.get() / nWords);
+  }
+
+  /** Returns the memory-mapped input matrix, or null for in-memory and quantized models. */
+  private WarmableMatrix warmableInput() {
+    return mmap && !quant && input instanceof WarmableMatrix ? (WarmableMatrix) input : null;
+  }
+
+  /**
+   * Loads the input rows of the nWords most frequent words and of their subwords into physical memory,
+   * in a background thread, so that the first predictions do not wait for page faults.
+   * The dictionary is sorted by decreasing count, so these are the rows of its first words.
+   * Does nothing for in-memory and quantized models.
+   * @return the future completed when the rows are loaded
+   */
+  public Future<?> warmUpWords(int nWords) {
+    Preconditions.checkArgument(nWords >= 0, "nWords must be positive");
+    return warmUpAsync(() -> {
+      BaseDictionary d = dict.clone();
+      BitSet rows = new BitSet(input.m());
+      for (int i = 0; i < Math.min(nWords, d.nWords()); i++) {
+        for (int it : d.getSubwords(i)) {
+          rows.set(it);
+        }
       }
+      return rows.stream().toArray();
+    });
+  }
+
+  /**
+   * Loads the given input rows into physical memory in a background thread.
+   * Does nothing for in-memory and quantized models.
+   * @return the future completed when the rows are loaded
+   */
+  public Future<?> warmUpRows(int[] rows) {
+    final int[] sorted = rows.clone();
+    Arrays.sort(sorted);
+    return warmUpAsync(() -> sorted);
+  }
+
+  /**
+   * Loads the limit most accessed input rows of a profile, e.g. recorded before a restart,
+   * into physical memory in a background thread.
+   * @see #saveHotRowsProfile(String)
+   */
+  public Future<?> warmUpHotRows(HotRowsProfile profile, int limit) {
+    return warmUpAsync(() -> profile.hotRows(limit));
+  }
+
+  private Future<?> warmUpAsync(Callable<int[]> rows) {
+    final WarmableMatrix matrix = warmableInput();
+    if (matrix == null) {
+      logger.debug("Input matrix is not memory-mapped, nothing to warm up.");
+      return Futures.immediateFuture(null);
     }
-    return syns;
+    FutureTask<Void> task = new FutureTask<>(() -> {
+      long start = System.nanoTime();
+      int[] r = rows.call();
+      matrix.warmUp(r);
+      double took = (System.nanoTime() - start) / 1000000000d;
+      logger.info(String.format(Locale.ENGLISH, "Done. %d input rows warmed up (%.3fs).", r.length, took));
+      return null;
+    });
+    Thread thread = new Thread(task, "fasttext-warm-up");
+    thread.setDaemon(true);
+    thread.start();
+    return task;
   }
 
   /**
-   * Nearest neighbor queries. Returns the closest words to a query word.
-   * @param queryWord query word
-   * @param k nearest neighbors number
-   * @return k nearest neighbors
+   * Starts recording the input rows read by predictions and vectors, sampling one access
+   * out of sampleRate, so that the hottest rows can be warmed up after a restart.
+   * Only memory-mapped, non-quantized models record their input rows.
+   * @return the recording profile
    */
-  public List<FastTextSynonym> nn(String queryWord, int k) {
-    Set<String> banSet = new HashSet<>();
-    banSet.add(queryWord);
-    Vector queryVec = getWordVector(queryWord);
-    return findNN(queryVec, k, banSet);
+  public HotRowsProfile recordHotRows(int sampleRate) {
+    Preconditions.checkState(warmableInput() != null, "Only memory-mapped input matrices record their rows");
+    HotRowsProfile profile = new HotRowsProfile(input.m(), sampleRate);
+    setHotRowsProfile(profile);
+    return profile;
   }
 
   /**
-   * Word analogies. It takes a word triplet and returns the analogies.
-   * @param queryA first word of the triplet
-   * @param queryB second word of the triplet
-   * @param queryC last word of the triplet
-   * @param k number of analogies
-   * @return k analogies
+   * Records the input rows in the given profile, e.g. loaded from a previous run to keep
+   * accumulating its counts, or stops recording if {@code null}.
+   * Clones record in the profile of the model they are cloned from.
    */
-  public List<FastTextSynonym> analogies(String queryA, String queryB, String queryC, int k) {
-    Set<String> banSet = new HashSet<>();
-    precomputeWordVectors();
-    Vector buffer;
-    Vector query = new Vector(args.getDimension());
-    query.zero();
-    // + A
-    banSet.add(queryA);
-    buffer = getWordVector(queryA);
-    query.addVector(buffer, 1.0f);
-    // - B
-    banSet.add(queryB);
-    buffer = getWordVector(queryB);
-    query.addVector(buffer, -1.0f);
-    // + C
-    banSet.add(queryC);
-    buffer = getWordVector(queryC);
-    query.addVector(buffer, 1.0f);
+  public void setHotRowsProfile(HotRowsProfile profile) {
+    WarmableMatrix matrix = warmableInput();
+    Preconditions.checkState(matrix != null || profile == null, "Only memory-mapped input matrices record their rows");
+    if (matrix != null) {
+      matrix.setHotRowsProfile(profile);
+    }
+  }
 
-    return findNN(query, k, banSet);
+  public HotRowsProfile getHotRowsProfile() {
+    WarmableMatrix matrix = warmableInput();
+    return matrix == null ? null : matrix.getHotRowsProfile();
   }
 
-  @Override
-  public FastText clone() throws CloneNotSupportedException {
-    FastText ft = this;
-    if (mmap) {
-      ft.dict = dict.clone();
-      if (quant) {
-        ft.qinput = qinput.clone();
-      } else {
-        ft.input = input.clone();
-      }
-      if (quant && args.getQOut()) {
-        ft.qoutput = new QMatrix(qoutput);
-      } else {
-        ft.output = new Matrix(output);
-      }
-      ft.model = buildModel(ft.args, ft.input, ft.output,
-        ft.quant, ft.args.getQOut(), ft.qinput, ft.qoutput);
+  /** Saves the recorded hot rows profile to a file. */
+  public void saveHotRowsProfile(String filename) throws IOException {
+    HotRowsProfile profile = getHotRowsProfile();
+    Preconditions.checkState(profile != null, "No hot rows profile to save");
+    File f = new File(filename);
+    ensureFilePath(f);
+    try (OutputStream os = new FileOutputStream(f)) {
+      profile.save(os);
     }
-    return ft;
   }
 
-  public void close() throws IOException {
-    dict.close();
-    if (quant) {
-      qinput.close();
-    } else {
-      input.close();
+  /** Loads a hot rows profile saved by {@link #saveHotRowsProfile(String)}. */
+  public static HotRowsProfile loadHotRowsProfile(String filename) throws IOException {
+    try (ResourceInput in = new MMapFile(Paths.get(filename)).openInput()) {
+      return HotRowsProfile.load(in);
     }
   }
 
   /**
-   * Load fastText model from file path.
-   * If the file is a directory, it tries to load a memory-mapped model.
-   * If it is a single file, it tries to open an in-memory fastText model from binary model.
+   * Computes the normalized vectors of words [from, to).
+   * Memory-mapped resources keep a read position, so they are read through clones.
    */
-  public static FastText loadModel(String filename) throws IOException {
-    File f = new File(filename);
-    if (f.isDirectory()) { // Memory-mapped format
-      logger.info("Loading memory-mapped FastText model from: " + filename);
-      File fb = new File(f.getAbsolutePath() + "/model.bin");
-      File fq = new File(f.getAbsolutePath() + "/model.ftz");
-      File modelFile;
-      if (fb.exists()) {
-        modelFile = fb;
-      } else if (fq.exists()) {
-        modelFile = fq;
-      } else {
-        throw new IOException("Model core file cannot be opened for loading");
-      }
-      Path dictFilePath = FileSystems.getDefault().getPath(f.getAbsolutePath() + "/dict.mmap");
-      Path inFilePath = FileSystems.getDefault().getPath(f.getAbsolutePath() + "/in.mmap");
-      MMapFile dictFile = new MMapFile(dictFilePath);
-      MMapFile inFile = new MMapFile(inFilePath);
-      try (InputStream is = new FileInputStream(modelFile)) {
-        return loadModel(is, dictFile, inFile);
+  private void computeWordVectors(Matrix vectors, int from, int to) {
+    BaseDictionary d = dict;
+    ReadableMatrix in = input;
+    ReadableQMatrix qin = qinput;
+    if (mmap) {
+      try {
+        d = dict.clone();
+        if (quant) {
+          qin = qinput.clone();
+        } else {
+          in = input.clone();
+        }
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException("Could not clone model resources", e);
       }
-    } else {
-      logger.info("Loading in-memory FastText model from:" + filename);
-      if (!f.canRead()) {
-        throw new IllegalArgumentException("Model file cannot be opened for loading");
+    }
+    Vector vec = new Vector(args.getDimension());
+    for (int i = from; i < to; i++) {
+      wordVector(d, in, qin, i, vec);
+      float norm = vec.norm();
+      if (norm > 0) {
+        vectors.addRow(vec, i, 1.0f / norm);
       }
-      try (InputStream is = new FileInputStream(f)) {
-        return loadModel(is);
+      if ((i - from + 1) % 1024 == 0) {
+        wordVectorsDone.addAndGet(1024);
       }
     }
+    wordVectorsDone.addAndGet((to - from) % 1024);
   }
 
-  private static FastText loadModel(InputStream in,
-                                    MMapFile dictFile,
-                                    MMapFile inputFile) throws IOException {
-    try (InputStreamFastTextInput is = new InputStreamFastTextInput(in)) {
-      int magic = is.readInt();
-      int version = is.readInt();
-      if (!checkModel(magic, version)) {
-        throw new IllegalArgumentException("Model file has wrong file format");
-      }
-      long start = System.nanoTime();
-      logger.info("Loading model arguments");
-      Args args = Args.load(is);
-      if (version == 11) {
-        // backward compatibility: old supervised models do not use char ngrams.
-        if (args.getModel() == Args.ModelName.SUP) {
-          args.setMaxn(0);
-        }
-        // backward compatibility: use max vocabulary size as word2intSize.
-        args.setUseMaxVocabularySize(true);
-      }
-      logger.info("Loading memory-mapped dictionary");
-      MMapDictionary dict = MMapDictionary.load(args, dictFile);
-      boolean quant = is.readBoolean();
-      MMapMatrix wi = null;
-      MMapQMatrix qwi = null;
+  /** Computes the vector of word id in vec: the average of its subword rows. */
+  private void wordVector(BaseDictionary d, ReadableMatrix in, ReadableQMatrix qin, int id, Vector vec) {
+    List<Integer> ngrams = d.getSubwords(id);
+    vec.zero();
+    for (int it : ngrams) {
       if (quant) {
-        logger.info("Model is quantized. Loading quantized input matrix");
-        qwi = MMapQMatrix.load(inputFile);
-        logger.info("... done");
-      } else {
-        logger.info("Loading input matrix");
-        wi = MMapMatrix.load(inputFile);
-        logger.info("... done");
-      }
-      if (!quant && dict.isPruned()) {
-        throw new IllegalArgumentException("Invalid model file.\n" +
-            "Please download the updated model from www.fasttext.cc.\n");
-      }
-      boolean qout = is.readBoolean();
-      args.setQOut(qout);
-      Matrix wo = null;
-      QMatrix qwo = null;
-      if (quant && args.getQOut()) {
-        logger.info("Classifier is quantized. Loading quantized output matrix");
-        qwo = QMatrix.load(is);
-        logger.info("... done");
+        vec.addRow(qin, it);
       } else {
-        logger.info("Loading output matrix");
-        wo = Matrix.load(is);
-        logger.info("... done");
+        vec.addRow(in, it);
       }
-      logger.info("Initiating model");
-      FastText fastText = new FastText(args, version, dict, wi, wo, quant, qwi, qwo, true);
-      long end = System.nanoTime();
-      double took = (end - start) / 1000000000d;
-      logger.info(String.format(Locale.ENGLISH, "FastText model loaded (%.3fs)", took));
-      return fastText;
     }
+    if (ngrams.size() > 0) {
+      vec.mul(1.0f / (float) ngrams.size());
+    }
+  }
 
+  private Vector getWordVector(int id) {
+    Vector vec = new Vector(args.getDimension());
+    wordVector(dict, input, qinput, id, vec);
+    return vec;
   }
 
-  /**
-   * Load a fastText model from a fastText binary format, reading from InputStream in.
+  private void precomputeWordNorms() {
+    if (wordNorms != null) {
+      logger.debug("Word vector norms are already precomputed.");
+      return;
+    }
+    synchronized (wordVectorsLock) {
+      if (wordNorms != null) {
+        return;
+      }
+      logger.info("Precomputing word vector norms...");
+      float[] norms = new float[dict.nWords()];
+      for (int i = 0; i < dict.nWords(); i++) {
+        List<Integer> ngrams = dict.getSubwords(i);
+        if (ngrams.size() == 1) {
+          norms[i] = qinput.rowNorm(ngrams.get(0));
+        } else {
+          norms[i] = getWordVector(i).norm();
+        }
+      }
+      wordNorms = norms;
+      logger.info("Done. Word vector norms precomputed.");
+    }
+  }
+
+  private List<FastTextSynonym> findQuantizedNN(Vector queryVec, int k, Set<String> banSet,
+                                                int maxRank, IntPredicate filter) {
+    precomputeWordNorms();
+    float queryNorm = queryVec.norm();
+    if (Math.abs(queryNorm) < 1e-8) {
+      queryNorm = 1.0f;
+    }
+    float[] dotTable = qinput.dotTable(queryVec);
+    int size = Math.max(k + banSet.size(), quantizedSearchRerank);
+    NeighborQueue heap = new NeighborQueue(size, false);
+    for (int i = 0; i < maxRank; i++) {
+      float norm = wordNorms[i];
+      if (norm <= 0 || (filter != null && !filter.test(i))) {
+        continue;
+      }
+      List<Integer> ngrams = dict.getSubwords(i);
+      float dp = 0.0f;
+      for (int it : ngrams) {
+        dp += qinput.dotRow(dotTable, it);
+      }
+      heap.insertWithOverflow(i, dp / (ngrams.size() * norm * queryNorm), size);
+    }
+    if (quantizedSearchRerank > 0) {
+      int[] candidates = new int[heap.size()];
+      for (int i = 0; i < candidates.length; i++) {
+        candidates[i] = heap.node(i);
+      }
+      heap.clear();
+      float[] query = queryVec.toArray();
+      for (int candidate : candidates) {
+        Vector vec = getWordVector(candidate);
+        float dp = VectorUtil.dotProduct(vec.toArray(), query);
+        heap.add(candidate, dp / (vec.norm() * queryNorm));
+      }
+    }
+    return toSynonyms(heap, k, banSet, 1.0f);
+  }
+
+  /**
+   * Number of partitions of the word vectors scanned in parallel by exact
+   * nearest neighbor and analogy queries, and computed in parallel by {@link #precomputeWordVectors()}.
+   * Defaults to 1, running in the calling thread. Partitions run in the common fork-join pool.
+   */
+  public void setNNThreads(int threads) {
+    Preconditions.checkArgument(threads > 0);
+    this.nnThreads = threads;
+  }
+
+  public int getNNThreads() {
+    return this.nnThreads;
+  }
+
+  /**
+   * Builds an HNSW nearest neighbor index over the word vectors, used by
+   * {@link #nn(String, int)} and {@link #analogies(String, String, String, int)}
+   * instead of scanning every word.
+   * @param maxConn maximum number of neighbors per node of the graph
+   * @param beamWidth number of candidates explored when inserting a word
+   */
+  public void buildNNIndex(int maxConn, int beamWidth) {
+    buildNNIndex(maxConn, beamWidth, dict.nWords());
+  }
+
+  /**
+   * Builds an HNSW nearest neighbor index over the vectors of the maxRank most frequent words.
+   * Queries restricted to these words use the index, other queries scan the word vectors.
+   * Only the vectors of the indexed words are computed, see {@link #precomputeWordVectors(int)}.
+   * @param maxConn maximum number of neighbors per node of the graph
+   * @param beamWidth number of candidates explored when inserting a word
+   * @param maxRank number of indexed words
+   * @see #nn(String, int, int)
+   */
+  public void buildNNIndex(int maxConn, int beamWidth, int maxRank) {
+    precomputeWordVectors(maxRank);
+    logger.info("Building nearest neighbor index...");
+    long start = System.nanoTime();
+    nnIndex = HnswIndex.build(wordVectors, Math.min(maxRank, dict.nWords()), maxConn, beamWidth);
+    double took = (System.nanoTime() - start) / 1000000000d;
+    logger.info(String.format(Locale.ENGLISH, "Done. Nearest neighbor index built (%.3fs).", took));
+  }
+
+  public void buildNNIndex() {
+    buildNNIndex(HnswIndex.DEFAULT_MAX_CONN, HnswIndex.DEFAULT_BEAM_WIDTH);
+  }
+
+  /**
+   * Sets the nearest neighbor index, or {@code null} to scan every word.
+   * The index must be built over the normalized word vectors of this model.
+   */
+  public void setNNIndex(NNIndex nnIndex) {
+    this.nnIndex = nnIndex;
+    this.nnIndexResource = null;
+  }
+
+  public NNIndex getNNIndex() {
+    ensureNNIndex();
+    return nnIndex;
+  }
+
+  /** Saves the nearest neighbor index to a file. */
+  public void saveNNIndex(String filename) throws IOException {
+    ensureNNIndex();
+    Preconditions.checkState(nnIndex != null, "No nearest neighbor index to save");
+    File f = new File(filename);
+    ensureFilePath(f);
+    try (OutputStream os = new FileOutputStream(f)) {
+      nnIndex.save(os);
+    }
+  }
+
+  /** Loads an HNSW nearest neighbor index saved by {@link #saveNNIndex(String)}. */
+  public void loadNNIndex(String filename) throws IOException {
+    loadNNIndex(MappedResource.of(new File(filename)));
+  }
+
+  private void loadNNIndex(MappedResource resource) throws IOException {
+    precomputeWordVectors();
+    logger.info("Loading nearest neighbor index from " + resource);
+    try (ResourceInput in = resource.open()) {
+      nnIndex = HnswIndex.load(in, wordVectors);
+    }
+    nnIndexResource = null;
+  }
+
+  private void ensureNNIndex() {
+    if (nnIndex == null && nnIndexResource != null) {
+      synchronized (wordVectorsLock) {
+        if (nnIndex == null && nnIndexResource != null) {
+          try {
+            loadNNIndex(nnIndexResource);
+          } catch (IOException e) {
+            throw new IllegalStateException("Could not load nearest neighbor index " + nnIndexResource, e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Measures the recall of the nearest neighbor index against the exact scan:
+   * the average fraction of the exact k nearest neighbors of sampled words
+   * that the index returns.
+   * @param k nearest neighbors number
+   * @param sampleSize number of sampled query words
+   */
+  public float nnIndexRecall(int k, int sampleSize) {
+    ensureNNIndex();
+    Preconditions.checkState(nnIndex != null, "No nearest neighbor index");
+    precomputeWordVectors(nnIndex.size());
+    Random rng = new Random(0);
+    // queries and neighbors among the indexed words
+    int nWords = nnIndex.size();
+    int found = 0;
+    int total = 0;
+    for (int q = 0; q < sampleSize && nWords > 0; q++) {
+      Vector query = new Vector(args.getDimension());
+      query.addRow(wordVectors, rng.nextInt(nWords));
+      NeighborQueue exact = scanWordVectors(query, 0, nWords, k);
+      NeighborQueue approx = nnIndex.search(query, k);
+      Set<Integer> approxIds = new HashSet<>();
+      for (int i = 0; i < approx.size(); i++) {
+        approxIds.add(approx.node(i));
+      }
+      for (int i = 0; i < exact.size(); i++) {
+        if (approxIds.contains(exact.node(i))) {
+          found++;
+        }
+      }
+      total += exact.size();
+    }
+    return total == 0 ? 1.0f : (float) found / total;
+  }
+
+  /** Returns null if the index doesn't find enough accepted words. */
+  private List<FastTextSynonym> findIndexedNN(Vector queryVec, int k, Set<String> banSet,
+                                              final int maxRank, final IntPredicate filter) {
+    float queryNorm = queryVec.norm();
+    if (Math.abs(queryNorm) < 1e-8) {
+      queryNorm = 1.0f;
+    }
+    Vector query = new Vector(queryVec.size());
+    query.addVector(queryVec, 1.0f / queryNorm);
+    IntPredicate accept = filter;
+    if (maxRank < nnIndex.size()) {
+      accept = filter == null ? i -> i < maxRank : i -> i < maxRank && filter.test(i);
+    }
+    int size = k + banSet.size();
+    NeighborQueue heap = nnIndex.search(query, size, accept);
+    if (heap.size() < Math.min(size, maxRank) && accept != null) {
+      return null;
+    }
+    return toSynonyms(heap, k, banSet, 1.0f);
+  }
+
+  /**
+   * Converts a top-k min-heap of (word id, score) to synonyms, best first,
+   * decoding only the words of the heap.
+   */
+  private List<FastTextSynonym> toSynonyms(NeighborQueue heap, int k, Set<String> banSet, float scale) {
+    int[] ids = new int[heap.size()];
+    float[] scores = new float[heap.size()];
+    for (int i = ids.length - 1; i >= 0; i--) {
+      scores[i] = heap.topScore();
+      ids[i] = heap.pop();
+    }
+    List<FastTextSynonym> syns = new ArrayList<>();
+    for (int i = 0; i < ids.length && syns.size() < k; i++) {
+      String word = dict.getWord(ids[i]);
+      if (!banSet.contains(word)) {
+        syns.add(new FastTextSynonym(word, scores[i] * scale));
+      }
+    }
+    return syns;
+  }
+
+  /** Collects the k word vectors of [from, to) with the highest dot products with the query. */
+  private NeighborQueue scanWordVectors(Vector queryVec, int from, int to, int k) {
+    return scanWordVectors(wordVectors, queryVec, from, to, k, null);
+  }
+
+  /** Collects the k accepted word vectors of [from, to) with the highest dot products with the query. */
+  private static NeighborQueue scanWordVectors(ReadableMatrix vectors, Vector queryVec, int from, int to, int k,
+                                               IntPredicate filter) {
+    NeighborQueue heap = new NeighborQueue(k, false);
+    for (int i = from; i < to; i++) {
+      if (filter == null || filter.test(i)) {
+        heap.insertWithOverflow(i, vectors.dotRow(queryVec, i), k);
+      }
+    }
+    return heap;
+  }
+
+  private ReadableMatrix cloneWordVectors() {
+    try {
+      return wordVectors.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException("Could not clone word vectors", e);
+    }
+  }
+
+  private NeighborQueue parallelScanWordVectors(final Vector queryVec, final int k,
+                                                final int nWords, final IntPredicate filter) {
+    final int partitions = Math.min(nnThreads, Math.max(nWords / 1024, 1));
+    if (partitions <= 1) {
+      return scanWordVectors(wordVectors, queryVec, 0, nWords, k, filter);
+    }
+    List<NeighborQueue> heaps = IntStream.range(0, partitions)
+      .parallel()
+      // memory-mapped word vectors are read through a clone per partition
+      .mapToObj(p -> scanWordVectors(cloneWordVectors(), queryVec,
+        (int) ((long) nWords * p / partitions), (int) ((long) nWords * (p + 1) / partitions), k, filter))
+      .collect(Collectors.toList());
+    NeighborQueue merged = new NeighborQueue(k, false);
+    for (NeighborQueue heap : heaps) {
+      for (int i = 0; i < heap.size(); i++) {
+        merged.insertWithOverflow(heap.node(i), heap.score(i), k);
+      }
+    }
+    return merged;
+  }
+
+  private List<FastTextSynonym> findNN(Vector queryVec, int k, Set<String> banSet) {
+    return findNN(queryVec, k, banSet, dict.nWords(), null);
+  }
+
+  /**
+   * Finds the nearest neighbors among the maxRank most frequent words accepted by the filter.
+   * The index is used if it covers these words, falling back to a scan when it doesn't
+   * find enough accepted words.
+   */
+  private List<FastTextSynonym> findNN(Vector queryVec, int k, Set<String> banSet, int maxRank, IntPredicate filter) {
+    maxRank = Math.min(maxRank, dict.nWords());
+    ensureNNIndex();
+    if (nnIndex != null && nnIndex.size() >= maxRank) {
+      List<FastTextSynonym> syns = findIndexedNN(queryVec, k, banSet, maxRank, filter);
+      if (syns != null) {
+        return syns;
+      }
+      logger.debug("Not enough words accepted by the nearest neighbor index, scanning word vectors");
+    }
+    if (quant && quantizedSearch) {
+      return findQuantizedNN(queryVec, k, banSet, maxRank, filter);
+    }
+    precomputeWordVectors(maxRank);
+    float queryNorm = queryVec.norm();
+    if (Math.abs(queryNorm) < 1e-8) {
+      queryNorm = 1.0f;
+    }
+    NeighborQueue heap = parallelScanWordVectors(queryVec, k + banSet.size(), maxRank, filter);
+    return toSynonyms(heap, k, banSet, 1.0f / queryNorm);
+  }
+
+  /**
+   * Nearest neighbor queries. Returns the closest words to a query word.
+   * @param queryWord query word
+   * @param k nearest neighbors number
+   * @return k nearest neighbors
+   */
+  public List<FastTextSynonym> nn(String queryWord, int k) {
+    Set<String> banSet = new HashSet<>();
+    banSet.add(queryWord);
+    Vector queryVec = getWordVector(queryWord);
+    return findNN(queryVec, k, banSet);
+  }
+
+  /**
+   * Nearest neighbor queries among the most frequent words.
+   * Dictionary words are sorted by decreasing count, so that these are the words whose id is lower than maxRank.
+   * @param queryWord query word
+   * @param k nearest neighbors number
+   * @param maxRank number of most frequent words searched
+   * @return k nearest neighbors
+   */
+  public List<FastTextSynonym> nn(String queryWord, int k, int maxRank) {
+    Preconditions.checkArgument(maxRank >= 0);
+    Set<String> banSet = new HashSet<>();
+    banSet.add(queryWord);
+    Vector queryVec = getWordVector(queryWord);
+    return findNN(queryVec, k, banSet, maxRank, null);
+  }
+
+  /**
+   * Nearest neighbor queries among the words accepted by a filter.
+   * @param queryWord query word
+   * @param k nearest neighbors number
+   * @param filter accepted word ids, as returned by {@link BaseDictionary#getId(String)}
+   * @return k nearest neighbors
+   */
+  public List<FastTextSynonym> nn(String queryWord, int k, IntPredicate filter) {
+    Preconditions.checkNotNull(filter);
+    Set<String> banSet = new HashSet<>();
+    banSet.add(queryWord);
+    Vector queryVec = getWordVector(queryWord);
+    return findNN(queryVec, k, banSet, dict.nWords(), filter);
+  }
+
+  /**
+   * Word analogies. It takes a word triplet and returns the analogies.
+   * @param queryA first word of the triplet
+   * @param queryB second word of the triplet
+   * @param queryC last word of the triplet
+   * @param k number of analogies
+   * @return k analogies
+   */
+  public List<FastTextSynonym> analogies(String queryA, String queryB, String queryC, int k) {
+    Set<String> banSet = new HashSet<>();
+    banSet.add(queryA);
+    banSet.add(queryB);
+    banSet.add(queryC);
+    return findNN(analogyQuery(queryA, queryB, queryC), k, banSet);
+  }
+
+  private Vector analogyQuery(String queryA, String queryB, String queryC) {
+    Vector buffer;
+    Vector query = new Vector(args.getDimension());
+    query.zero();
+    // + A
+    buffer = getWordVector(queryA);
+    query.addVector(buffer, 1.0f);
+    // - B
+    buffer = getWordVector(queryB);
+    query.addVector(buffer, -1.0f);
+    // + C
+    buffer = getWordVector(queryC);
+    query.addVector(buffer, 1.0f);
+    return query;
+  }
+
+  /**
+   * Batch nearest neighbor queries. Equivalent to calling {@link #nn(String, int)}
+   * for every query word, but the exact scan reads the word vectors once per block
+   * of queries instead of once per query. Blocks are scanned in parallel when
+   * {@link #setNNThreads(int)} is greater than 1.
+   * @param queryWords query words
+   * @param k nearest neighbors number
+   * @return k nearest neighbors of every query word
+   */
+  public List<List<FastTextSynonym>> nnBatch(List<String> queryWords, int k) {
+    List<Vector> queries = new ArrayList<>(queryWords.size());
+    List<Set<String>> banSets = new ArrayList<>(queryWords.size());
+    for (String queryWord : queryWords) {
+      queries.add(getWordVector(queryWord));
+      banSets.add(Collections.singleton(queryWord));
+    }
+    return findNNBatch(queries, k, banSets);
+  }
+
+  /**
+   * Batch word analogies. Equivalent to calling {@link #analogies(String, String, String, int)}
+   * for every triplet, but the exact scan reads the word vectors once per block
+   * of queries instead of once per query.
+   * @param triplets word triplets
+   * @param k number of analogies
+   * @return k analogies of every triplet
+   */
+  public List<List<FastTextSynonym>> analogiesBatch(List<List<String>> triplets, int k) {
+    List<Vector> queries = new ArrayList<>(triplets.size());
+    List<Set<String>> banSets = new ArrayList<>(triplets.size());
+    for (List<String> triplet : triplets) {
+      Preconditions.checkArgument(triplet.size() == 3, "Analogy queries are word triplets: %s", triplet);
+      queries.add(analogyQuery(triplet.get(0), triplet.get(1), triplet.get(2)));
+      banSets.add(new HashSet<>(triplet));
+    }
+    return findNNBatch(queries, k, banSets);
+  }
+
+  private List<List<FastTextSynonym>> findNNBatch(List<Vector> queries, int k, List<Set<String>> banSets) {
+    ensureNNIndex();
+    List<List<FastTextSynonym>> results = new ArrayList<>(queries.size());
+    if (nnIndex != null || (quant && quantizedSearch)) {
+      // sublinear or table based searches, nothing to share between queries
+      for (int q = 0; q < queries.size(); q++) {
+        results.add(findNN(queries.get(q), k, banSets.get(q)));
+      }
+      return results;
+    }
+    precomputeWordVectors();
+    final int nQueries = queries.size();
+    final int dim = args.getDimension();
+    final float[] block = new float[nQueries * dim];
+    final float[] scales = new float[nQueries];
+    final int[] sizes = new int[nQueries];
+    for (int q = 0; q < nQueries; q++) {
+      Vector query = queries.get(q);
+      System.arraycopy(query.toArray(), 0, block, q * dim, dim);
+      float queryNorm = query.norm();
+      scales[q] = Math.abs(queryNorm) < 1e-8 ? 1.0f : 1.0f / queryNorm;
+      sizes[q] = k + banSets.get(q).size();
+    }
+    final NeighborQueue[] heaps = new NeighborQueue[nQueries];
+    final int nBlocks = (nQueries + QUERY_BLOCK_SIZE - 1) / QUERY_BLOCK_SIZE;
+    IntStream blocks = IntStream.range(0, nBlocks);
+    if (nnThreads > 1) {
+      blocks = blocks.parallel();
+    }
+    blocks.forEach(b -> scanWordVectorsBlock(cloneWordVectors(), block, sizes, heaps,
+        b * QUERY_BLOCK_SIZE, Math.min(nQueries, (b + 1) * QUERY_BLOCK_SIZE)));
+    for (int q = 0; q < nQueries; q++) {
+      results.add(toSynonyms(heaps[q], k, banSets.get(q), scales[q]));
+    }
+    return results;
+  }
+
+  /**
+   * Scores queries [from, to) of the block against all the word vectors, one tile
+   * of rows at a time. The queries are transposed so that the scores of a row against
+   * all the queries are accumulated with vector updates (rank-1 updates of a matrix
+   * product), which vectorize, instead of one dot product per query.
+   * Memory-mapped rows are copied once per tile.
+   */
+  private void scanWordVectorsBlock(ReadableMatrix vectors, float[] block, int[] sizes,
+                                    NeighborQueue[] heaps, int from, int to) {
+    int dim = vectors.n();
+    int nWords = vectors.m();
+    int nb = to - from;
+    float[] transposed = new float[dim * nb];
+    for (int q = 0; q < nb; q++) {
+      heaps[from + q] = new NeighborQueue(sizes[from + q], false);
+      for (int j = 0; j < dim; j++) {
+        transposed[j * nb + q] = block[(from + q) * dim + j];
+      }
+    }
+    float[] scores = new float[nb];
+    float[] data;
+    boolean direct = vectors instanceof Matrix;
+    if (direct) {
+      data = ((Matrix) vectors).toArray();
+    } else {
+      data = new float[ROW_TILE_SIZE * dim];
+    }
+    for (int tile = 0; tile < nWords; tile += ROW_TILE_SIZE) {
+      int tileEnd = Math.min(nWords, tile + ROW_TILE_SIZE);
+      int offset = 0;
+      if (direct) {
+        offset = tile * dim;
+      } else {
+        for (int i = tile; i < tileEnd; i++) {
+          System.arraycopy(vectors.atRow(i), 0, data, (i - tile) * dim, dim);
+        }
+      }
+      for (int i = tile; i < tileEnd; i++) {
+        int r = offset + (i - tile) * dim;
+        Arrays.fill(scores, 0.0f);
+        for (int j = 0; j < dim; j++) {
+          VectorUtil.axpy(data[r + j], transposed, j * nb, scores, 0, nb);
+        }
+        for (int q = 0; q < nb; q++) {
+          heaps[from + q].insertWithOverflow(i, scores[q], sizes[from + q]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public FastText clone() throws CloneNotSupportedException {
+    FastText ft = this;
+    if (mmap) {
+      ft.dict = dict.clone();
+      if (quant) {
+        ft.qinput = qinput.clone();
+      } else {
+        ft.input = input.clone();
+      }
+      if (quant && args.getQOut()) {
+        ft.qoutput = new QMatrix(qoutput);
+      } else {
+        ft.output = new Matrix(output);
+      }
+      ft.model = buildModel(ft.args, ft.input, ft.output,
+        ft.quant, ft.args.getQOut(), ft.qinput, ft.qoutput);
+    }
+    return ft;
+  }
+
+  public void close() throws IOException {
+    dict.close();
+    if (wordVectors != null) {
+      wordVectors.close();
+    }
+    if (quant) {
+      qinput.close();
+    } else {
+      input.close();
+    }
+    if (modelFile != null) {
+      modelFile.close();
+    }
+  }
+
+  /**
+   * Checks the CRC32 of every section of a memory-mapped model file, reading the whole file.
+   * Only model files saved by {@link #saveAsMemoryMappedModelFile(String)} carry checksums.
+   * @throws IllegalArgumentException if a section is corrupted
+   */
+  public void checkIntegrity() throws IOException {
+    Preconditions.checkState(modelFile != null, "Only memory-mapped model files can be checked");
+    modelFile.checkIntegrity();
+  }
+
+  /**
+   * Load fastText model from file path.
+   * If the file is a directory, it tries to load a memory-mapped model.
+   * If it is a single file, it tries to open an in-memory fastText model from binary model.
+   */
+  public static FastText loadModel(String filename) throws IOException {
+    return loadModel(filename, MatrixEncoding.FLOAT32);
+  }
+
+  /**
+   * Load fastText model from file path.
+   * If the file is a directory, it tries to load a memory-mapped model,
+   * whose input matrix encoding was chosen at conversion time.
+   * If it is a single file, it tries to open an in-memory fastText model from binary model,
+   * storing the input matrix of non-quantized models with the given encoding.
+   * Memory-mapped model files, see {@link #saveAsMemoryMappedModelFile(String)}, are mapped.
+   * Binary models compressed with gzip, ending with {@code .gz}, are inflated while being read.
+   */
+  public static FastText loadModel(String filename, MatrixEncoding inputEncoding) throws IOException {
+    File f = new File(filename);
+    if (f.isDirectory()) { // Memory-mapped format
+      logger.info("Loading memory-mapped FastText model from: " + filename);
+      File fb = new File(f.getAbsolutePath() + "/" + MODEL_BIN_FILENAME);
+      File fq = new File(f.getAbsolutePath() + "/" + MODEL_FTZ_FILENAME);
+      File modelFile;
+      if (fb.exists()) {
+        modelFile = fb;
+      } else if (fq.exists()) {
+        modelFile = fq;
+      } else {
+        throw new IOException("Model core file cannot be opened for loading");
+      }
+      Path dictFilePath = FileSystems.getDefault().getPath(f.getAbsolutePath() + "/" + DICTIONARY_FILENAME);
+      Path inFilePath = FileSystems.getDefault().getPath(f.getAbsolutePath() + "/" + INPUT_FILENAME);
+      MMapFile dictFile = new MMapFile(dictFilePath);
+      MMapFile inFile = new MMapFile(inFilePath);
+      FastText fastText;
+      try (ChannelFastTextInput is = ChannelFastTextInput.open(modelFile.toPath())) {
+        fastText = loadModel(is, dictFile, dictFile.openInput(), inFile, inFile.openInput());
+      }
+      File wordVectorsFile = new File(f.getAbsolutePath() + "/" + WORD_VECTORS_FILENAME);
+      if (wordVectorsFile.exists()) {
+        // mapped on first use
+        fastText.wordVectorsResource = MappedResource.of(wordVectorsFile);
+      }
+      File nnIndexFile = new File(f.getAbsolutePath() + "/" + NN_INDEX_FILENAME);
+      if (nnIndexFile.exists()) {
+        // loaded on first use, as it requires the word vectors
+        fastText.nnIndexResource = MappedResource.of(nnIndexFile);
+      }
+      File labelIndexFile = new File(f.getAbsolutePath() + "/" + LABEL_INDEX_FILENAME);
+      if (labelIndexFile.exists()) {
+        // loaded on first prediction
+        fastText.labelIndexResource = MappedResource.of(labelIndexFile);
+      }
+      return fastText;
+    } else {
+      logger.info("Loading in-memory FastText model from:" + filename);
+      if (!f.canRead()) {
+        throw new IllegalArgumentException("Model file cannot be opened for loading");
+      }
+      if (filename.endsWith(GZIP_SUFFIX)) {
+        return loadModel(new GZIPInputStream(new FileInputStream(f), GZIP_BUFFER_SIZE), inputEncoding);
+      }
+      if (MMapModelFile.isModelFile(f.toPath())) {
+        return loadModelFile(f);
+      }
+      try (ChannelFastTextInput is = ChannelFastTextInput.open(f.toPath())) {
+        return loadModel(is, inputEncoding);
+      }
+    }
+  }
+
+  /**
+   * Load a memory-mapped model file saved by {@link #saveAsMemoryMappedModelFile(String)}.
+   * The header is checked, see {@link #checkIntegrity()} to check the sections.
+   */
+  private static FastText loadModelFile(File f) throws IOException {
+    logger.info("Loading memory-mapped FastText model file from: " + f);
+    MMapModelFile modelFile = MMapModelFile.open(f.toPath());
+    ResourceInput dictInput = null;
+    ResourceInput inputInput = null;
+    FastText fastText;
+    try (ChannelFastTextInput is = ChannelFastTextInput.open(f.toPath())) {
+      is.seek(modelFile.sectionOffset(Section.MODEL));
+      dictInput = modelFile.openSection(Section.DICTIONARY);
+      inputInput = modelFile.openSection(Section.INPUT);
+      fastText = loadModel(is, modelFile.getMMapFile(), dictInput, modelFile.getMMapFile(), inputInput);
+    } catch (IOException | RuntimeException e) {
+      for (Closeable resource : new Closeable[] {inputInput, dictInput, modelFile}) {
+        if (resource != null) {
+          try {
+            resource.close();
+          } catch (IOException | RuntimeException suppressed) {
+            e.addSuppressed(suppressed);
+          }
+        }
+      }
+      throw e;
+    }
+    fastText.modelFile = modelFile;
+    if (modelFile.hasSection(Section.WORD_VECTORS)) {
+      fastText.wordVectorsResource = MappedResource.of(modelFile, Section.WORD_VECTORS);
+    }
+    if (modelFile.hasSection(Section.NN_INDEX)) {
+      fastText.nnIndexResource = MappedResource.of(modelFile, Section.NN_INDEX);
+    }
+    if (modelFile.hasSection(Section.LABEL_INDEX)) {
+      fastText.labelIndexResource = MappedResource.of(modelFile, Section.LABEL_INDEX);
+    }
+    return fastText;
+  }
+
+  private static FastText loadModel(FastTextInput is,
+                                    MMapFile dictFile,
+                                    ResourceInput dictInput,
+                                    MMapFile inputFile,
+                                    ResourceInput inputInput) throws IOException {
+    int magic = is.readInt();
+    int version = is.readInt();
+    if (!checkModel(magic, version)) {
+      throw new IllegalArgumentException("Model file has wrong file format");
+    }
+    long start = System.nanoTime();
+    Args args = loadArgs(is, version);
+    logger.info("Loading memory-mapped dictionary");
+    MMapDictionary dict = MMapDictionary.load(args, dictFile, dictInput);
+    boolean quant = is.readBoolean();
+    ReadableMatrix wi = null;
+    MMapQMatrix qwi = null;
+    if (quant) {
+      logger.info("Model is quantized. Loading quantized input matrix");
+      qwi = MMapQMatrix.load(inputFile, inputInput);
+      logger.info("... done");
+    } else {
+      logger.info("Loading input matrix");
+      wi = MMapMatrixFormat.load(inputFile, inputInput);
+      logger.info("... done");
+    }
+    checkPruned(dict, quant);
+    boolean qout = is.readBoolean();
+    args.setQOut(qout);
+    Matrix wo = null;
+    QMatrix qwo = null;
+    if (quant && args.getQOut()) {
+      logger.info("Classifier is quantized. Loading quantized output matrix");
+      qwo = QMatrix.load(is);
+      logger.info("... done");
+    } else {
+      logger.info("Loading output matrix");
+      wo = Matrix.load(is);
+      logger.info("... done");
+    }
+    logger.info("Initiating model");
+    FastText fastText = new FastText(args, version, dict, wi, wo, quant, qwi, qwo, true);
+    long end = System.nanoTime();
+    double took = (end - start) / 1000000000d;
+    logger.info(String.format(Locale.ENGLISH, "FastText model loaded (%.3fs)", took));
+    return fastText;
+  }
+
+  /**
+   * Load a fastText model from a fastText binary format, reading from InputStream in.
    */
   public static FastText loadModel(InputStream in) throws IOException {
-    try (InputStreamFastTextInput is = new InputStreamFastTextInput(in)) {
+    return loadModel(in, MatrixEncoding.FLOAT32);
+  }
+
+  /**
+   * Load a fastText model from a fastText binary format, reading from InputStream in.
+   * The input matrix of non-quantized models is stored with the given encoding.
+   * The stream is read ahead on a background thread, so that slow streams like
+   * a {@link GZIPInputStream} are decompressed while the model is parsed.
+   */
+  public static FastText loadModel(InputStream in, MatrixEncoding inputEncoding) throws IOException {
+    try (PipelinedFastTextInput is = new PipelinedFastTextInput(in)) {
+      return loadModel(is, inputEncoding);
+    }
+  }
+
+  /**
+   * Pack a memory-mapped model directory into a single zip file, compressing its files.
+   * @see #loadCompressedModel(String)
+   */
+  public static void compressMemoryMappedModel(String dirName, String filename) throws IOException {
+    File dir = new File(dirName);
+    File[] files = dir.listFiles(File::isFile);
+    if (files == null) {
+      throw new IllegalArgumentException("Memory-mapped model directory cannot be opened: " + dirName);
+    }
+    Arrays.sort(files);
+    File archive = new File(filename);
+    ensureFilePath(archive);
+    byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+    try (ZipOutputStream os = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)))) {
+      for (File file : files) {
+        os.putNextEntry(new ZipEntry(file.getName()));
+        try (InputStream is = new FileInputStream(file)) {
+          int read;
+          while ((read = is.read(buffer)) >= 0) {
+            os.write(buffer, 0, read);
+          }
+        }
+        os.closeEntry();
+      }
+    }
+  }
+
+  /**
+   * Load a memory-mapped model packed with {@link #compressMemoryMappedModel(String, String)},
+   * inflating it into a temporary directory which is deleted on exit.
+   */
+  public static FastText loadCompressedModel(String filename) throws IOException {
+    return loadCompressedModel(filename, System.getProperty("java.io.tmpdir"));
+  }
+
+  /**
+   * Load a memory-mapped model packed with {@link #compressMemoryMappedModel(String, String)},
+   * inflating it into a temporary directory created in tmpDirName, which is deleted on exit.
+   */
+  public static FastText loadCompressedModel(String filename, String tmpDirName) throws IOException {
+    logger.info("Inflating compressed memory-mapped FastText model from: " + filename);
+    Path dir = Files.createTempDirectory(Paths.get(tmpDirName), "fasttext");
+    // deleted in reverse order of registration, the directory after its files
+    dir.toFile().deleteOnExit();
+    byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+    try (ZipInputStream is = new ZipInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+      ZipEntry entry;
+      while ((entry = is.getNextEntry()) != null) {
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.equals(new File(name).getName())) {
+          throw new IllegalArgumentException("Compressed model has unexpected entry: " + name);
+        }
+        File file = dir.resolve(name).toFile();
+        file.deleteOnExit();
+        try (OutputStream os = new FileOutputStream(file)) {
+          int read;
+          while ((read = is.read(buffer)) >= 0) {
+            os.write(buffer, 0, read);
+          }
+        }
+      }
+    }
+    return loadModel(dir.toString());
+  }
+
+  /**
+   * Load a fastText binary model (.bin or .ftz) from file path, memory-mapping the input matrix
+   * of non-quantized models in place instead of reading it, as with a converted memory-mapped model.
+   * The dictionary, the output matrix and quantized input matrices are read on the heap.
+   */
+  public static FastText mapModel(String filename) throws IOException {
+    File f = new File(filename);
+    logger.info("Loading FastText model with memory-mapped input matrix from: " + filename);
+    if (!f.canRead() || f.isDirectory()) {
+      throw new IllegalArgumentException("Model file cannot be opened for loading");
+    }
+    try (ChannelFastTextInput is = ChannelFastTextInput.open(f.toPath())) {
+      return loadModel(is, MatrixEncoding.FLOAT32, new MMapFile(f.toPath()));
+    }
+  }
+
+  /**
+   * Load a fastText binary model from file path, reading it with several threads: once a first pass
+   * has located the dictionary and the matrices in the file, they are read concurrently with positional
+   * reads, and the word hashes and subwords of the dictionary are computed over ranges of words.
+   * At most two threads read the file, the dictionary and the input matrix; the word hashes and
+   * subwords are computed with up to threads tasks.
+   * Directories are loaded as memory-mapped models, and gzip files are inflated, with a single thread.
+   * @param threads number of threads, 1 to read the model sequentially
+   */
+  public static FastText loadModel(String filename, MatrixEncoding inputEncoding, int threads) throws IOException {
+    if (threads == 1) {
+      return loadModel(filename, inputEncoding);
+    }
+    return loadModel(filename, inputEncoding, threads, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Load a fastText binary model from file path, reading it with several threads, see
+   * {@link #loadModel(String, MatrixEncoding, int)}. Only the subwords of the precomputedSubwords
+   * most frequent words are computed at load time, the subwords of other words are computed
+   * on first use. This speeds up loading and saves memory with large vocabularies,
+   * especially for supervised models, which only use the subwords of words with char n-grams.
+   * Directories are loaded as memory-mapped models, whose subwords are stored, and gzip files are
+   * inflated with a single thread.
+   * @param threads number of threads, 1 to read the model sequentially
+   * @param precomputedSubwords number of words whose subwords are computed at load time
+   */
+  public static FastText loadModel(String filename,
+                                   MatrixEncoding inputEncoding,
+                                   int threads,
+                                   int precomputedSubwords) throws IOException {
+    Preconditions.checkArgument(threads > 0, "threads must be positive");
+    Preconditions.checkArgument(precomputedSubwords >= 0, "precomputedSubwords must be positive or 0");
+    File f = new File(filename);
+    if (f.isDirectory() || filename.endsWith(GZIP_SUFFIX) || (f.canRead() && MMapModelFile.isModelFile(f.toPath()))) {
+      return loadModel(filename, inputEncoding);
+    }
+    logger.info("Loading in-memory FastText model with " + threads + " threads from:" + filename);
+    if (!f.canRead()) {
+      throw new IllegalArgumentException("Model file cannot be opened for loading");
+    }
+    ExecutorService executor = threads > 1
+      ? Executors.newFixedThreadPool(Math.min(threads, PARALLEL_LOAD_TASKS))
+      : MoreExecutors.newDirectExecutorService();
+    try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+      ChannelFastTextInput is = new ChannelFastTextInput(channel, 0L, ChannelFastTextInput.DEFAULT_BUFFER_SIZE);
       int magic = is.readInt();
       int version = is.readInt();
       if (!checkModel(magic, version)) {
         throw new IllegalArgumentException("Model file has wrong file format");
       }
       long start = System.nanoTime();
-      logger.info("Loading model arguments");
-      Args args = Args.load(is);
-      if (version == 11) {
-        // backward compatibility: old supervised models do not use char ngrams.
-        if (args.getModel() == Args.ModelName.SUP) {
-          args.setMaxn(0);
-        }
-        // backward compatibility: use max vocabulary size as word2intSize.
-        args.setUseMaxVocabularySize(true);
-      }
-      logger.info("Loading dictionary");
-      Dictionary dict = Dictionary.load(args, is);
+      Args args = loadArgs(is, version);
+      final long dictOffset = is.getFilePointer();
+      Dictionary.skip(is);
       boolean quant = is.readBoolean();
-      Matrix wi = null;
+      Future<Dictionary> dictTask = executor.submit(() -> {
+        logger.info("Loading dictionary");
+        return Dictionary.load(args,
+          new ChannelFastTextInput(channel, dictOffset, ChannelFastTextInput.DEFAULT_BUFFER_SIZE),
+          threads, precomputedSubwords);
+      });
+      Future<ReadableMatrix> inputTask = null;
       QMatrix qwi = null;
       if (quant) {
+        // the length of quantized matrices is only known once read
         logger.info("Model is quantized. Loading quantized input matrix");
         qwi = QMatrix.load(is);
         logger.info("... done");
       } else {
-        logger.info("Loading input matrix");
-        wi = Matrix.load(is);
-        logger.info("... done");
-      }
-      if (!quant && dict.isPruned()) {
-        throw new IllegalArgumentException("Invalid model file.\n" +
-            "Please download the updated model from www.fasttext.cc.\n");
+        final long inputOffset = is.getFilePointer();
+        long m = is.readLong();
+        long n = is.readLong();
+        is.seek(inputOffset + 2 * Long.BYTES + m * n * Float.BYTES);
+        inputTask = executor.submit(() -> loadInputMatrix(
+          new ChannelFastTextInput(channel, inputOffset, ChannelFastTextInput.DEFAULT_BUFFER_SIZE), inputEncoding));
       }
       boolean qout = is.readBoolean();
       args.setQOut(qout);
@@ -714,16 +1887,143 @@ public class FastText {
         wo = Matrix.load(is);
         logger.info("... done");
       }
+      Dictionary dict = getLoaded(dictTask);
+      ReadableMatrix wi = inputTask != null ? getLoaded(inputTask) : null;
+      checkPruned(dict, quant);
       logger.info("Initiating model");
       FastText fastText = new FastText(args, version, dict, wi, wo, quant, qwi, qwo, false);
-      long end = System.nanoTime();
-      double took = (end - start) / 1000000000d;
+      double took = (System.nanoTime() - start) / 1000000000d;
       logger.info(String.format(Locale.ENGLISH, "FastText model loaded (%.3fs)", took));
       return fastText;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> T getLoaded(Future<T> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading model");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Could not load model", cause);
+    }
+  }
+
+  private static Args loadArgs(FastTextInput is, int version) throws IOException {
+    logger.info("Loading model arguments");
+    Args args = Args.load(is);
+    if (version == 11) {
+      // backward compatibility: old supervised models do not use char ngrams.
+      if (args.getModel() == Args.ModelName.SUP) {
+        args.setMaxn(0);
+      }
+      // backward compatibility: use max vocabulary size as word2intSize.
+      args.setUseMaxVocabularySize(true);
+    }
+    return args;
+  }
+
+  private static void checkPruned(BaseDictionary dict, boolean quant) {
+    if (!quant && dict.isPruned()) {
+      throw new IllegalArgumentException("Invalid model file.\n" +
+          "Please download the updated model from www.fasttext.cc.\n");
+    }
+  }
+
+  /** Loads a float input matrix, stored with the given encoding. */
+  private static ReadableMatrix loadInputMatrix(FastTextInput is, MatrixEncoding inputEncoding) throws IOException {
+    ReadableMatrix wi;
+    if (inputEncoding == MatrixEncoding.FLOAT32) {
+      logger.info("Loading input matrix");
+      wi = Matrix.load(is);
+    } else if (inputEncoding == MatrixEncoding.INT8) {
+      logger.info("Loading input matrix as " + inputEncoding);
+      wi = Int8Matrix.load(is);
+    } else {
+      logger.info("Loading input matrix as " + inputEncoding);
+      wi = HalfMatrix.load(is, inputEncoding);
+    }
+    logger.info("... done");
+    return wi;
+  }
+
+  /** Maps the float matrix at the current position of the model file, then skips it. */
+  private static MMapMatrix mapInputMatrix(ChannelFastTextInput is, MMapFile modelFile) throws IOException {
+    long offset = is.getFilePointer();
+    long m = is.readLong();
+    long n = is.readLong();
+    long length = 2 * Long.BYTES + m * n * Float.BYTES;
+    // mapped on its own, the input of the matrix is closed with the matrix
+    MMapMatrix matrix = MMapMatrix.load(modelFile, modelFile.openInput(offset, length, ByteOrder.LITTLE_ENDIAN));
+    is.seek(offset + length);
+    return matrix;
+  }
+
+  private static FastText loadModel(FastTextInput is, MatrixEncoding inputEncoding) throws IOException {
+    return loadModel(is, inputEncoding, null);
+  }
+
+  /**
+   * Loads a fastText binary model. If mappedModelFile is not {@code null}, the input is
+   * a {@link ChannelFastTextInput} of this file, whose float input matrix is memory-mapped.
+   */
+  private static FastText loadModel(FastTextInput is,
+                                    MatrixEncoding inputEncoding,
+                                    MMapFile mappedModelFile) throws IOException {
+    int magic = is.readInt();
+    int version = is.readInt();
+    if (!checkModel(magic, version)) {
+      throw new IllegalArgumentException("Model file has wrong file format");
+    }
+    long start = System.nanoTime();
+    Args args = loadArgs(is, version);
+    logger.info("Loading dictionary");
+    Dictionary dict = Dictionary.load(args, is);
+    boolean quant = is.readBoolean();
+    ReadableMatrix wi = null;
+    QMatrix qwi = null;
+    if (quant) {
+      logger.info("Model is quantized. Loading quantized input matrix");
+      qwi = QMatrix.load(is);
+      logger.info("... done");
+    } else if (mappedModelFile != null) {
+      logger.info("Memory-mapping input matrix");
+      wi = mapInputMatrix((ChannelFastTextInput) is, mappedModelFile);
+      logger.info("... done");
+    } else {
+      wi = loadInputMatrix(is, inputEncoding);
+    }
+    checkPruned(dict, quant);
+    boolean qout = is.readBoolean();
+    args.setQOut(qout);
+    Matrix wo = null;
+    QMatrix qwo = null;
+    if (quant && args.getQOut()) {
+      logger.info("Classifier is quantized. Loading quantized output matrix");
+      qwo = QMatrix.load(is);
+      logger.info("... done");
+    } else {
+      logger.info("Loading output matrix");
+      wo = Matrix.load(is);
+      logger.info("... done");
     }
+    logger.info("Initiating model");
+    FastText fastText = new FastText(args, version, dict, wi, wo, quant, qwi, qwo, wi instanceof MMapMatrix);
+    long end = System.nanoTime();
+    double took = (end - start) / 1000000000d;
+    logger.info(String.format(Locale.ENGLISH, "FastText model loaded (%.3fs)", took));
+    return fastText;
   }
 
-  private void ensureFilePath(File f) {
+  private static void ensureFilePath(File f) {
     if (f.exists()) {
       f.delete();
     }
@@ -769,6 +2069,10 @@ public class FastText {
       os.writeBoolean(quant);
       if (quant) {
         ((QMatrix) qinput).save(os);
+      } else if (input instanceof HalfMatrix) {
+        ((HalfMatrix) input).save(os);
+      } else if (input instanceof Int8Matrix) {
+        ((Int8Matrix) input).save(os);
       } else {
         ((Matrix) input).save(os);
       }
@@ -786,68 +2090,231 @@ public class FastText {
    * @param dirName mmap model output path
    */
   public void saveAsMemoryMappedModel(String dirName) throws IOException {
+    saveAsMemoryMappedModel(dirName, inputEncoding());
+  }
+
+  /**
+   * Save the current fastText model to a memory-mapped model.
+   * The input matrix of non-quantized models is converted to the given encoding.
+   * @param dirName mmap model output path
+   * @param inputEncoding encoding of the memory-mapped input matrix
+   */
+  public void saveAsMemoryMappedModel(String dirName, MatrixEncoding inputEncoding) throws IOException {
+    saveAsMemoryMappedModel(dirName, inputEncoding, false);
+  }
+
+  /**
+   * Save the current fastText model to a memory-mapped model.
+   * The input matrix of non-quantized models is converted to the given encoding.
+   * @param dirName mmap model output path
+   * @param inputEncoding encoding of the memory-mapped input matrix
+   * @param saveWordVectors also save the normalized word vectors, memory-mapped
+   *                        by nearest neighbor and analogy queries instead of being precomputed
+   */
+  public void saveAsMemoryMappedModel(String dirName, MatrixEncoding inputEncoding, boolean saveWordVectors)
+    throws IOException {
+    saveAsMemoryMappedModel(dirName, inputEncoding, saveWordVectors, false);
+  }
+
+  /**
+   * Save the current fastText model to a memory-mapped model.
+   * The input matrix of non-quantized models is converted to the given encoding.
+   * @param dirName mmap model output path
+   * @param inputEncoding encoding of the memory-mapped input matrix
+   * @param saveWordVectors also save the normalized word vectors, memory-mapped
+   *                        by nearest neighbor and analogy queries instead of being precomputed
+   * @param alignRows pad the rows of the input matrix and word vectors to 64 bytes, the size of a cache line
+   */
+  public void saveAsMemoryMappedModel(String dirName,
+                                      MatrixEncoding inputEncoding,
+                                      boolean saveWordVectors,
+                                      boolean alignRows) throws IOException {
     if (mmap) {
       throw new IllegalArgumentException("Cannot save from memory-mapped model");
     }
 
     long start = System.nanoTime();
     File dir = new File(dirName);
-
-    String modelFilename = "model";
-    String dictionaryFilename = "dict";
-    String inputFilename = "in";
-
-    if (quant) {
-      modelFilename += ".ftz";
-    } else {
-      modelFilename += ".bin";
-    }
-    File modelFile = new File(dir.getAbsolutePath() + "/" + modelFilename);
-    ensureFilePath(modelFile);
-    if (args.getVerboseLevel() > 1) {
-      logger.info("Saving core model to " + modelFile.getCanonicalPath());
+    Map<Section, SectionWriter> sections = memoryMappedSections(inputEncoding, saveWordVectors, alignRows);
+    // files of a previous conversion would be loaded with this model
+    Files.deleteIfExists(new File(dir, quant ? MODEL_BIN_FILENAME : MODEL_FTZ_FILENAME).toPath());
+    for (Section section : Section.values()) {
+      if (!sections.containsKey(section)) {
+        Files.deleteIfExists(new File(dir, sectionFilename(section)).toPath());
+      }
     }
-    try (OutputStreamFastTextOutput os = new OutputStreamFastTextOutput(new FileOutputStream(modelFile))) {
-      signModel(FASTTEXT_FILEFORMAT_MAGIC_INT, version, os);
-      args.save(os);
-      os.writeBoolean(quant);
-      os.writeBoolean(args.getQOut());
-      if (quant && args.getQOut()) {
-        qoutput.save(os);
-      } else {
-        output.save(os);
+    for (Map.Entry<Section, SectionWriter> section : sections.entrySet()) {
+      File file = new File(dir.getAbsolutePath() + "/" + sectionFilename(section.getKey()));
+      ensureFilePath(file);
+      if (args.getVerboseLevel() > 1) {
+        logger.info("Saving " + section.getKey() + " to " + file.getCanonicalPath());
+      }
+      try (OutputStream os = new FileOutputStream(file)) {
+        section.getValue().write(os);
       }
     }
+    long end = System.nanoTime();
+    double took = (end - start) / 1000000000d;
+    logger.info(String.format(Locale.ENGLISH,
+        "FastText model successfully converted to mmapped (took %.3fs).", took));
+  }
 
-    dictionaryFilename += ".mmap";
-    File dictFile = new File(dir.getAbsolutePath() + "/" + dictionaryFilename);
-    ensureFilePath(dictFile);
-    if (args.getVerboseLevel() > 1) {
-      logger.info("Saving memory-mapped dictionary model to " + dictFile.getCanonicalPath());
-    }
-    try (FileOutputStream os = new FileOutputStream(dictFile)) {
-      dict.saveToMMap(os);
+  /**
+   * Save the current fastText model to a single memory-mapped model file, see {@link MMapModelFile}.
+   * @param filename mmap model file output path
+   */
+  public void saveAsMemoryMappedModelFile(String filename) throws IOException {
+    saveAsMemoryMappedModelFile(filename, inputEncoding());
+  }
+
+  /**
+   * Save the current fastText model to a single memory-mapped model file, see {@link MMapModelFile}.
+   * The input matrix of non-quantized models is converted to the given encoding.
+   * @param filename mmap model file output path
+   * @param inputEncoding encoding of the memory-mapped input matrix
+   */
+  public void saveAsMemoryMappedModelFile(String filename, MatrixEncoding inputEncoding) throws IOException {
+    saveAsMemoryMappedModelFile(filename, inputEncoding, false);
+  }
+
+  /**
+   * Save the current fastText model to a single memory-mapped model file, see {@link MMapModelFile}.
+   * The file holds the same sections as the files of a memory-mapped model directory,
+   * and is replaced atomically.
+   * @param filename mmap model file output path
+   * @param inputEncoding encoding of the memory-mapped input matrix
+   * @param saveWordVectors also save the normalized word vectors, memory-mapped
+   *                        by nearest neighbor and analogy queries instead of being precomputed
+   */
+  public void saveAsMemoryMappedModelFile(String filename, MatrixEncoding inputEncoding, boolean saveWordVectors)
+    throws IOException {
+    saveAsMemoryMappedModelFile(filename, inputEncoding, saveWordVectors, false);
+  }
+
+  /**
+   * Save the current fastText model to a single memory-mapped model file, see {@link MMapModelFile}.
+   * The file holds the same sections as the files of a memory-mapped model directory,
+   * and is replaced atomically.
+   * @param filename mmap model file output path
+   * @param inputEncoding encoding of the memory-mapped input matrix
+   * @param saveWordVectors also save the normalized word vectors, memory-mapped
+   *                        by nearest neighbor and analogy queries instead of being precomputed
+   * @param alignRows pad the rows of the input matrix and word vectors to 64 bytes, the size of a cache line
+   */
+  public void saveAsMemoryMappedModelFile(String filename,
+                                          MatrixEncoding inputEncoding,
+                                          boolean saveWordVectors,
+                                          boolean alignRows) throws IOException {
+    if (mmap) {
+      throw new IllegalArgumentException("Cannot save from memory-mapped model");
     }
 
-    inputFilename += ".mmap";
-    File inputFile = new File(dir.getAbsolutePath() + "/" + inputFilename);
-    ensureFilePath(inputFile);
-    if (args.getVerboseLevel() > 1) {
-      logger.info("Saving memory-mapped input matrix model to " + inputFile.getCanonicalPath());
+    long start = System.nanoTime();
+    File file = new File(filename);
+    if (file.getAbsoluteFile().getParentFile() != null) {
+      file.getAbsoluteFile().getParentFile().mkdirs();
     }
-    try (FileOutputStream os = new FileOutputStream(inputFile)) {
+    MMapModelFile.write(file.toPath(), memoryMappedSections(inputEncoding, saveWordVectors, alignRows));
+    long end = System.nanoTime();
+    double took = (end - start) / 1000000000d;
+    logger.info(String.format(Locale.ENGLISH,
+        "FastText model successfully converted to mmapped model file (took %.3fs).", took));
+  }
+
+  /** Writers of the files of a memory-mapped model, or of the sections of a model file. */
+  private Map<Section, SectionWriter> memoryMappedSections(MatrixEncoding inputEncoding,
+                                                           boolean saveWordVectors,
+                                                           boolean alignRows) {
+    Map<Section, SectionWriter> sections = new EnumMap<>(Section.class);
+    sections.put(Section.MODEL, os -> {
+      try (OutputStreamFastTextOutput out = new OutputStreamFastTextOutput(os)) {
+        signModel(FASTTEXT_FILEFORMAT_MAGIC_INT, version, out);
+        args.save(out);
+        out.writeBoolean(quant);
+        out.writeBoolean(args.getQOut());
+        if (quant && args.getQOut()) {
+          qoutput.save(out);
+        } else {
+          output.save(out);
+        }
+      }
+    });
+    sections.put(Section.DICTIONARY, dict::saveToMMap);
+    sections.put(Section.INPUT, os -> {
       if (quant) {
+        if (inputEncoding != MatrixEncoding.FLOAT32) {
+          logger.warn("Input matrix is quantized, ignoring " + inputEncoding + " encoding");
+        }
         qinput.saveToMMap(os);
       } else {
-        input.saveToMMap(os);
+        encodeInput(inputEncoding).saveToMMap(os, alignRows);
       }
+    });
+    if (saveWordVectors) {
+      precomputeWordVectors();
+      sections.put(Section.WORD_VECTORS, os -> wordVectors.saveToMMap(os, alignRows));
     }
-    long end = System.nanoTime();
-    double took = (end - start) / 1000000000d;
-    logger.info(String.format(Locale.ENGLISH,
-        "FastText model successfully converted to mmapped (took %.3fs).", took));
+    ensureNNIndex();
+    if (nnIndex != null) {
+      sections.put(Section.NN_INDEX, os -> nnIndex.save(os));
+    }
+    NNIndex labelIndex = getLabelIndex();
+    if (labelIndex != null) {
+      sections.put(Section.LABEL_INDEX, labelIndex::save);
+    }
+    return sections;
+  }
+
+  /** Name of the file holding a section in a memory-mapped model directory. */
+  private String sectionFilename(Section section) {
+    switch (section) {
+      case MODEL:
+        return quant ? MODEL_FTZ_FILENAME : MODEL_BIN_FILENAME;
+      case DICTIONARY:
+        return DICTIONARY_FILENAME;
+      case INPUT:
+        return INPUT_FILENAME;
+      case WORD_VECTORS:
+        return WORD_VECTORS_FILENAME;
+      case NN_INDEX:
+        return NN_INDEX_FILENAME;
+      default:
+        return LABEL_INDEX_FILENAME;
+    }
+  }
+
+
+  private MatrixEncoding inputEncoding() {
+    if (input instanceof HalfMatrix) {
+      return ((HalfMatrix) input).encoding();
+    } else if (input instanceof Int8Matrix) {
+      return MatrixEncoding.INT8;
+    }
+    return MatrixEncoding.FLOAT32;
   }
 
+  private ReadableMatrix encodeInput(MatrixEncoding encoding) {
+    switch (encoding) {
+      case FLOAT16:
+      case BFLOAT16:
+        if (input instanceof HalfMatrix && ((HalfMatrix) input).encoding() == encoding) {
+          return input;
+        }
+        return new HalfMatrix(input, encoding);
+      case INT8:
+        if (input instanceof Int8Matrix) {
+          return input;
+        }
+        return new Int8Matrix(input);
+      default:
+        if (input instanceof HalfMatrix) {
+          return ((HalfMatrix) input).toMatrix();
+        } else if (input instanceof Int8Matrix) {
+          return ((Int8Matrix) input).toMatrix();
+        }
+        return input;
+    }
+  }
 
   public static void main(String[] args) throws Exception {
 
@@ -861,6 +2328,41 @@ public class FastText {
     output.setRequired(true);
     options.addOption(output);
 
+    Option encoding = new Option("e", "encoding", true,
+      "input matrix encoding of non-quantized models: float32 (default), float16, bfloat16 or int8");
+    options.addOption(encoding);
+
+    Option nnIndex = new Option("n", "nnindex", false,
+      "build a nearest neighbor index over the word vectors of unsupervised models");
+    options.addOption(nnIndex);
+
+    Option labelIndex = new Option("l", "labelindex", false,
+      "build a label index over the output matrix of softmax and negative sampling supervised models");
+    options.addOption(labelIndex);
+
+    Option wordVectors = new Option("w", "wordvectors", false,
+      "save the normalized word vectors used by nearest neighbor queries");
+    options.addOption(wordVectors);
+
+    Option threads = new Option("t", "threads", true, "number of threads used to load the model (default 1)");
+    options.addOption(threads);
+
+    Option file = new Option("f", "file", false,
+      "save a single memory-mapped model file instead of a directory");
+
+    Option align = new Option("a", "align", false,
+      "pad the rows of memory-mapped matrices to 64 bytes");
+    options.addOption(align);
+
+    Option compress = new Option("z", "compress", false,
+      "also pack the memory-mapped model into a compressed <output>.zip file");
+
+    // compressed models are packed from a model directory
+    OptionGroup packaging = new OptionGroup();
+    packaging.addOption(file);
+    packaging.addOption(compress);
+    options.addOptionGroup(packaging);
+
     CommandLineParser parser = new DefaultParser();
     HelpFormatter formatter = new HelpFormatter();
     CommandLine cmd;
@@ -877,13 +2379,103 @@ public class FastText {
 
     String inputModelPath = cmd.getOptionValue("input");
     String baseOutputPath = cmd.getOptionValue("output");
+    MatrixEncoding inputEncoding = MatrixEncoding.fromName(cmd.getOptionValue("encoding", "float32"));
 
     logger.info("Loading fastText model to convert...");
-    FastText model = FastText.loadModel(inputModelPath);
+    FastText model = FastText.loadModel(inputModelPath, MatrixEncoding.FLOAT32,
+      Integer.parseInt(cmd.getOptionValue("threads", "1")));
+
+    if (cmd.hasOption("nnindex")) {
+      model.buildNNIndex();
+    }
+
+    if (cmd.hasOption("labelindex")) {
+      model.buildLabelIndex();
+    }
 
     logger.info("Saving fastText model to memory-mapped model...");
-    model.saveAsMemoryMappedModel(baseOutputPath);
+    if (cmd.hasOption("file")) {
+      model.saveAsMemoryMappedModelFile(baseOutputPath, inputEncoding, cmd.hasOption("wordvectors"),
+        cmd.hasOption("align"));
+      return;
+    }
+    model.saveAsMemoryMappedModel(baseOutputPath, inputEncoding, cmd.hasOption("wordvectors"),
+      cmd.hasOption("align"));
+
+    if (cmd.hasOption("compress")) {
+      logger.info("Compressing memory-mapped model...");
+      compressMemoryMappedModel(baseOutputPath, baseOutputPath + ".zip");
+    }
+
+  }
+
+  /** Memory-mapped resource loaded on first use: a file of a model directory or a section of a model file */
+  private static final class MappedResource {
+
+    private final MMapFile file;
+    private final MMapModelFile modelFile;
+    private final Section section;
+
+    private MappedResource(MMapFile file, MMapModelFile modelFile, Section section) {
+      this.file = file;
+      this.modelFile = modelFile;
+      this.section = section;
+    }
+
+    static MappedResource of(File file) throws IOException {
+      return new MappedResource(new MMapFile(file.toPath()), null, null);
+    }
 
+    static MappedResource of(MMapModelFile modelFile, Section section) {
+      return new MappedResource(modelFile.getMMapFile(), modelFile, section);
+    }
+
+    MMapFile file() {
+      return file;
+    }
+
+    ResourceInput open() throws IOException {
+      return modelFile == null ? file.openInput() : modelFile.openSection(section);
+    }
+
+    @Override
+    public String toString() {
+      return modelFile == null ? file.getPath().toString() : file.getPath() + " [" + section + "]";
+    }
+  }
+
+  /** Key of the prediction cache: the word and n-gram ids of a document, k and the threshold */
+  private static final class PredictionKey {
+    private final int[] input;
+    private final int k;
+    private final float threshold;
+    private final int hash;
+
+    PredictionKey(int[] input, int k, float threshold) {
+      this.input = input;
+      this.k = k;
+      this.threshold = threshold;
+      this.hash = 31 * (31 * Arrays.hashCode(input) + k) + Float.floatToIntBits(threshold);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PredictionKey)) {
+        return false;
+      }
+      PredictionKey other = (PredictionKey) o;
+      return hash == other.hash && k == other.k &&
+        Float.floatToIntBits(threshold) == Float.floatToIntBits(other.threshold) &&
+        Arrays.equals(input, other.input);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,200 @@
+package fasttext;
+
+import com.google.common.base.Preconditions;
+import fasttext.mmap.MMapMatrixFormat;
+import fasttext.store.FastTextInput;
+import fasttext.store.OutputStreamFastTextOutput;
+import fasttext.store.OutputStreamResourceOutput;
+import fasttext.util.HalfFloats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link ReadableMatrix} storing its values as 16 bits floats,
+ * either float16 or bfloat16. Values are widened to float when read.
+ */
+public class HalfMatrix implements ReadableMatrix {
+
+  private final short[] data;
+  private final int m;
+  private final int n;
+  private final MatrixEncoding encoding;
+  private final boolean bfloat16;
+
+  private HalfMatrix(int m, int n, short[] data, MatrixEncoding encoding) {
+    checkEncoding(encoding);
+    this.m = m;
+    this.n = n;
+    this.data = data;
+    this.encoding = encoding;
+    this.bfloat16 = encoding == MatrixEncoding.BFLOAT16;
+  }
+
+  public HalfMatrix(ReadableMatrix mat, MatrixEncoding encoding) {
+    this(mat.m(), mat.n(), new short[mat.m() * mat.n()], encoding);
+    for (int i = 0; i < m; i++) {
+      float[] row = mat.atRow(i);
+      for (int j = 0; j < n; j++) {
+        data[i * n + j] = narrow(row[j]);
+      }
+    }
+  }
+
+  private static void checkEncoding(MatrixEncoding encoding) {
+    Preconditions.checkArgument(
+      encoding == MatrixEncoding.FLOAT16 || encoding == MatrixEncoding.BFLOAT16,
+      "Unsupported half matrix encoding: %s", encoding);
+  }
+
+  private short narrow(float f) {
+    return bfloat16 ? HalfFloats.floatToBFloat16(f) : HalfFloats.floatToHalf(f);
+  }
+
+  private float widen(short h) {
+    return bfloat16 ? HalfFloats.bfloat16ToFloat(h) : HalfFloats.halfToFloat(h);
+  }
+
+  public MatrixEncoding encoding() {
+    return encoding;
+  }
+
+  public float[] atRow(int i) {
+    float[] r = new float[n];
+    int offset = i * n;
+    for (int j = 0; j < n; j++) {
+      r[j] = widen(data[offset + j]);
+    }
+    return r;
+  }
+
+  public float at(int i, int j) {
+    return widen(data[i * n + j]);
+  }
+
+  public float dotRow(final Vector vec, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    Preconditions.checkArgument(vec.size() == n);
+    float d = 0.0f;
+    int offset = i * n;
+    for (int j = 0; j < n; j++) {
+      d += widen(data[offset + j]) * vec.data[j];
+    }
+    if (Float.isNaN(d)) {
+      throw new IllegalStateException("Encountered NaN.");
+    }
+    return d;
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    int offset = i * n;
+    for (int j = 0; j < n; j++) {
+      x.data[j] += a * widen(data[offset + j]);
+    }
+  }
+
+  public float l2NormRow(int i) {
+    float norm = 0.0f;
+    int offset = i * n;
+    for (int j = 0; j < n; j++) {
+      float v = widen(data[offset + j]);
+      norm += v * v;
+    }
+    if (Float.isNaN(norm)) {
+      throw new IllegalStateException("Encountered NaN.");
+    }
+    return (float) Math.sqrt(norm);
+  }
+
+  public Vector l2NormRow(Vector norms) {
+    Preconditions.checkArgument(norms.size() == m);
+    for (int i = 0; i < m; i++) {
+      norms.set(i, l2NormRow(i));
+    }
+    return norms;
+  }
+
+  /** Returns a float matrix with the widened values. */
+  public Matrix toMatrix() {
+    Matrix mat = new Matrix(m, n);
+    float[] matData = mat.toArray();
+    for (int i = 0; i < m * n; i++) {
+      matData[i] = widen(data[i]);
+    }
+    return mat;
+  }
+
+  public int m() {
+    return this.m;
+  }
+
+  public int n() {
+    return this.n;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("HalfMatrix(m=");
+    builder.append(m);
+    builder.append(", n=");
+    builder.append(n);
+    builder.append(", encoding=");
+    builder.append(encoding);
+    builder.append(")");
+    return builder.toString();
+  }
+
+  /**
+   * Loads a float matrix from a fastText binary model,
+   * narrowing values on the fly to the given encoding.
+   */
+  public static HalfMatrix load(FastTextInput is, MatrixEncoding encoding) throws IOException {
+    checkEncoding(encoding);
+    boolean bfloat16 = encoding == MatrixEncoding.BFLOAT16;
+    int m = (int) is.readLong();
+    int n = (int) is.readLong();
+    short[] data = new short[m * n];
+    float[] row = new float[n];
+    for (int i = 0; i < m; i++) {
+      is.readFloats(row, 0, n);
+      for (int j = 0; j < n; j++) {
+        data[i * n + j] = bfloat16 ? HalfFloats.floatToBFloat16(row[j]) : HalfFloats.floatToHalf(row[j]);
+      }
+    }
+    return new HalfMatrix(m, n, data, encoding);
+  }
+
+  /** Saves the matrix widened to floats, following the fastText binary format. */
+  public void save(OutputStreamFastTextOutput os) throws IOException {
+    os.writeLong(m);
+    os.writeLong(n);
+    for (int i = 0; i < m * n; i++) {
+      os.writeFloat(widen(data[i]));
+    }
+  }
+
+  public void saveToMMap(OutputStream os) throws IOException {
+    saveToMMap(os, false);
+  }
+
+  public void saveToMMap(OutputStream os, boolean alignRows) throws IOException {
+    try (OutputStreamResourceOutput fos = new OutputStreamResourceOutput("halfmatrix", os)) {
+      MMapMatrixFormat.Layout layout = MMapMatrixFormat.writeHeader(fos, encoding, m, n, alignRows);
+      for (int i = 0; i < m; i++) {
+        for (int j = 0; j < n; j++) {
+          fos.writeShort(data[i * n + j]);
+        }
+        layout.writeRowPadding(fos, i);
+      }
+    }
+  }
+
+  public void close() {}
+
+  @Override
+  public HalfMatrix clone() throws CloneNotSupportedException {
+    return (HalfMatrix) super.clone();
+  }
+
+}
@@ -0,0 +1,202 @@
+package fasttext;
+
+import com.google.common.base.Preconditions;
+import fasttext.mmap.MMapMatrixFormat;
+import fasttext.store.FastTextInput;
+import fasttext.store.OutputStreamFastTextOutput;
+import fasttext.store.OutputStreamResourceOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link ReadableMatrix} storing its values as signed bytes with one scale per row.
+ *
+ * <p>Each row is quantized symmetrically: the largest absolute value of the row
+ * is mapped to 127, so that a value is decoded as {@code scale[i] * data[i][j]}.
+ * Values are dequantized on the fly when read.
+ */
+public class Int8Matrix implements ReadableMatrix {
+
+  private static final int MAX_CODE = 127;
+
+  private final byte[] data;
+  private final float[] scales;
+  private final int m;
+  private final int n;
+
+  private Int8Matrix(int m, int n, byte[] data, float[] scales) {
+    this.m = m;
+    this.n = n;
+    this.data = data;
+    this.scales = scales;
+  }
+
+  public Int8Matrix(ReadableMatrix mat) {
+    this(mat.m(), mat.n(), new byte[mat.m() * mat.n()], new float[mat.m()]);
+    for (int i = 0; i < m; i++) {
+      scales[i] = quantizeRow(mat.atRow(i), data, i * n);
+    }
+  }
+
+  /**
+   * Quantizes a row of floats into bytes at the given offset. Returns the row scale.
+   */
+  public static float quantizeRow(float[] row, byte[] codes, int offset) {
+    float max = 0.0f;
+    for (float v : row) {
+      max = Math.max(max, Math.abs(v));
+    }
+    float scale = max / MAX_CODE;
+    float inv = scale > 0 ? 1.0f / scale : 0.0f;
+    for (int j = 0; j < row.length; j++) {
+      int q = Math.round(row[j] * inv);
+      codes[offset + j] = (byte) Math.max(-MAX_CODE, Math.min(MAX_CODE, q));
+    }
+    return scale;
+  }
+
+  public float[] atRow(int i) {
+    float[] r = new float[n];
+    int offset = i * n;
+    float scale = scales[i];
+    for (int j = 0; j < n; j++) {
+      r[j] = scale * data[offset + j];
+    }
+    return r;
+  }
+
+  public float at(int i, int j) {
+    return scales[i] * data[i * n + j];
+  }
+
+  public float scale(int i) {
+    return scales[i];
+  }
+
+  public float dotRow(final Vector vec, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    Preconditions.checkArgument(vec.size() == n);
+    float d = 0.0f;
+    int offset = i * n;
+    for (int j = 0; j < n; j++) {
+      d += data[offset + j] * vec.data[j];
+    }
+    d *= scales[i];
+    if (Float.isNaN(d)) {
+      throw new IllegalStateException("Encountered NaN.");
+    }
+    return d;
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    int offset = i * n;
+    float scale = a * scales[i];
+    for (int j = 0; j < n; j++) {
+      x.data[j] += scale * data[offset + j];
+    }
+  }
+
+  public float l2NormRow(int i) {
+    float norm = 0.0f;
+    int offset = i * n;
+    for (int j = 0; j < n; j++) {
+      float v = data[offset + j];
+      norm += v * v;
+    }
+    if (Float.isNaN(norm)) {
+      throw new IllegalStateException("Encountered NaN.");
+    }
+    return scales[i] * (float) Math.sqrt(norm);
+  }
+
+  public Vector l2NormRow(Vector norms) {
+    Preconditions.checkArgument(norms.size() == m);
+    for (int i = 0; i < m; i++) {
+      norms.set(i, l2NormRow(i));
+    }
+    return norms;
+  }
+
+  /** Returns a float matrix with the dequantized values. */
+  public Matrix toMatrix() {
+    Matrix mat = new Matrix(m, n);
+    float[] matData = mat.toArray();
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < n; j++) {
+        matData[i * n + j] = scales[i] * data[i * n + j];
+      }
+    }
+    return mat;
+  }
+
+  public int m() {
+    return this.m;
+  }
+
+  public int n() {
+    return this.n;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Int8Matrix(m=");
+    builder.append(m);
+    builder.append(", n=");
+    builder.append(n);
+    builder.append(")");
+    return builder.toString();
+  }
+
+  /**
+   * Loads a float matrix from a fastText binary model, quantizing rows on the fly.
+   */
+  public static Int8Matrix load(FastTextInput is) throws IOException {
+    int m = (int) is.readLong();
+    int n = (int) is.readLong();
+    byte[] data = new byte[m * n];
+    float[] scales = new float[m];
+    float[] row = new float[n];
+    for (int i = 0; i < m; i++) {
+      is.readFloats(row, 0, n);
+      scales[i] = quantizeRow(row, data, i * n);
+    }
+    return new Int8Matrix(m, n, data, scales);
+  }
+
+  /** Saves the matrix dequantized to floats, following the fastText binary format. */
+  public void save(OutputStreamFastTextOutput os) throws IOException {
+    os.writeLong(m);
+    os.writeLong(n);
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < n; j++) {
+        os.writeFloat(scales[i] * data[i * n + j]);
+      }
+    }
+  }
+
+  public void saveToMMap(OutputStream os) throws IOException {
+    saveToMMap(os, false);
+  }
+
+  public void saveToMMap(OutputStream os, boolean alignRows) throws IOException {
+    try (OutputStreamResourceOutput fos = new OutputStreamResourceOutput("int8matrix", os)) {
+      MMapMatrixFormat.Layout layout = MMapMatrixFormat.writeHeader(fos, MatrixEncoding.INT8, m, n, alignRows);
+      // each row is stored as its scale followed by its codes
+      for (int i = 0; i < m; i++) {
+        fos.writeFloat(scales[i]);
+        fos.writeBytes(data, i * n, n);
+        layout.writeRowPadding(fos, i);
+      }
+    }
+  }
+
+  public void close() {}
+
+  @Override
+  public Int8Matrix clone() throws CloneNotSupportedException {
+    return (Int8Matrix) super.clone();
+  }
+
+}
@@ -0,0 +1,106 @@
+package fasttext;
+
+import com.google.common.base.Preconditions;
+
+import java.io.OutputStream;
+
+/**
+ * Read-only view of the output matrix as the unit vectors of a label index, see
+ * {@link Model#labelIndexVectors()}. The augmented rows are computed from the output rows
+ * when read, so that only the extra component of each row is stored.
+ */
+final class LabelIndexMatrix implements ReadableMatrix {
+
+  private final Matrix wo;
+  private final QMatrix qwo;
+  private final float scale;
+  private final float[] extra;
+  private final int m;
+  private final int n;
+
+  /**
+   * @param wo output matrix, or {@code null} if qwo is given
+   * @param qwo quantized output matrix, or {@code null} if wo is given
+   * @param maxNorm largest row norm of the output matrix
+   * @param norms row norms of the output matrix
+   */
+  LabelIndexMatrix(Matrix wo, QMatrix qwo, float maxNorm, float[] norms) {
+    this.wo = wo;
+    this.qwo = qwo;
+    this.m = wo != null ? wo.m() : qwo.m();
+    this.n = (wo != null ? wo.n() : qwo.n()) + 1;
+    this.scale = maxNorm > 0.0f ? 1.0f / maxNorm : 0.0f;
+    this.extra = new float[m];
+    for (int i = 0; i < m; i++) {
+      float norm = norms[i] * scale;
+      extra[i] = (float) Math.sqrt(Math.max(0.0f, 1.0f - norm * norm));
+    }
+  }
+
+  public float[] atRow(int i) {
+    Vector row = new Vector(n);
+    addToVector(row, i, 1.0f);
+    return row.data;
+  }
+
+  public float at(int i, int j) {
+    return atRow(i)[j];
+  }
+
+  public float dotRow(final Vector vec, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    Preconditions.checkArgument(vec.size() == n);
+    float d = wo != null ? wo.dotRowPrefix(vec.data, i) : qwo.dotRowPrefix(vec, i);
+    return d * scale + vec.data[n - 1] * extra[i];
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    if (wo != null) {
+      wo.addToVector(x, i, a * scale);
+    } else {
+      Vector row = new Vector(n - 1);
+      qwo.addToVector(row, i);
+      for (int j = 0; j < n - 1; j++) {
+        x.data[j] += a * scale * row.data[j];
+      }
+    }
+    x.data[n - 1] += a * extra[i];
+  }
+
+  public float l2NormRow(int i) {
+    Vector row = new Vector(n);
+    addToVector(row, i, 1.0f);
+    return row.norm();
+  }
+
+  public Vector l2NormRow(Vector norms) {
+    Preconditions.checkArgument(norms.size() == m);
+    for (int i = 0; i < m; i++) {
+      norms.set(i, l2NormRow(i));
+    }
+    return norms;
+  }
+
+  public int m() {
+    return m;
+  }
+
+  public int n() {
+    return n;
+  }
+
+  public LabelIndexMatrix clone() {
+    return this;
+  }
+
+  public void close() {}
+
+  public void saveToMMap(OutputStream os) {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
+  public void saveToMMap(OutputStream os, boolean alignRows) {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
+}
@@ -1,10 +1,12 @@
 package fasttext;
 
 import com.google.common.base.Preconditions;
-import fasttext.store.InputStreamFastTextInput;
+import fasttext.mmap.MMapMatrixFormat;
+import fasttext.store.FastTextInput;
 import fasttext.store.OutputStreamFastTextOutput;
 import fasttext.store.OutputStreamResourceOutput;
 import fasttext.util.Randoms;
+import fasttext.util.VectorUtil;
 
 import java.io.*;
 import java.util.Random;
@@ -62,22 +64,26 @@ public class Matrix implements ReadableMatrix {
   public float dotRow(final Vector vec, int i) {
     Preconditions.checkPositionIndex(i, m);
     Preconditions.checkArgument(vec.size() == n);
-    float d = 0.0f;
-    for (int j = 0; j < n; j++) {
-      d += data[i * n + j] * vec.at(j);
-    }
+    float d = VectorUtil.dotProduct(data, i * n, vec.data, 0, n);
     if (Float.isNaN(d)) {
       throw new IllegalStateException("Encountered NaN.");
     }
     return d;
   }
 
+  /** Dot product of row i with the first n values of x, which may be longer than a row. */
+  float dotRowPrefix(float[] x, int i) {
+    return VectorUtil.dotProduct(data, i * n, x, 0, n);
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    VectorUtil.axpy(a, data, i * n, x.data, 0, n);
+  }
+
   public void addRow(final Vector vec, int i, float a) {
     Preconditions.checkPositionIndex(i, m);
     Preconditions.checkArgument(vec.size() == n);
-    for (int j = 0; j < n; j++) {
-      data[i * n + j] += a * vec.at(j);
-    }
+    VectorUtil.axpy(a, vec.data, 0, data, i * n, n);
   }
 
   public void multiplyRow(final Vector nums) {
@@ -174,14 +180,11 @@ public class Matrix implements ReadableMatrix {
     return this.data;
   }
 
-  public static Matrix load(InputStreamFastTextInput is) throws IOException {
+  public static Matrix load(FastTextInput is) throws IOException {
     int m = (int) is.readLong();
     int n = (int) is.readLong();
     float[] data = new float[m * n];
-    for (int i = 0; i < m * n; i++) {
-      float d = is.readFloat();
-      data[i] = d;
-    }
+    is.readFloats(data, 0, m * n);
     return new Matrix(m, n, data);
   }
 
@@ -194,11 +197,17 @@ public class Matrix implements ReadableMatrix {
   }
 
   public void saveToMMap(OutputStream os) throws IOException {
+    saveToMMap(os, false);
+  }
+
+  public void saveToMMap(OutputStream os, boolean alignRows) throws IOException {
     try (OutputStreamResourceOutput fos = new OutputStreamResourceOutput("matrix", os)) {
-      fos.writeLong(m);
-      fos.writeLong(n);
-      for (int i = 0; i < m * n; i++) {
-        fos.writeFloat(data[i]);
+      MMapMatrixFormat.Layout layout = MMapMatrixFormat.writeHeader(fos, MatrixEncoding.FLOAT32, m, n, alignRows);
+      for (int i = 0; i < m; i++) {
+        for (int j = 0; j < n; j++) {
+          fos.writeFloat(data[i * n + j]);
+        }
+        layout.writeRowPadding(fos, i);
       }
     }
   }
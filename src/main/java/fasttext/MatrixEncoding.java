@@ -0,0 +1,41 @@
+package fasttext;
+
+import java.util.Locale;
+
+/** Storage encoding of the input matrix of non-quantized models. */
+public enum MatrixEncoding {
+
+  FLOAT32(0), FLOAT16(1), BFLOAT16(2), INT8(3);
+  private int value;
+
+  MatrixEncoding(int value) {
+    this.value = value;
+  }
+
+  public int getValue() {
+    return this.value;
+  }
+
+  public static MatrixEncoding fromValue(int value) throws IllegalArgumentException {
+    try {
+      return MatrixEncoding.values()[value];
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Unknown matrix_encoding enum value :" + value);
+    }
+  }
+
+  public static MatrixEncoding fromName(String name) throws IllegalArgumentException {
+    for (MatrixEncoding encoding : MatrixEncoding.values()) {
+      if (encoding.name().equalsIgnoreCase(name)) {
+        return encoding;
+      }
+    }
+    throw new IllegalArgumentException("Unknown matrix encoding :" + name);
+  }
+
+  @Override
+  public String toString() {
+    return name().toLowerCase(Locale.ENGLISH);
+  }
+
+}
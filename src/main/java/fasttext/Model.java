@@ -4,8 +4,12 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.MinMaxPriorityQueue;
 import com.google.common.primitives.Booleans;
 import com.google.common.primitives.Ints;
+import fasttext.index.HnswIndex;
+import fasttext.index.NNIndex;
+import fasttext.index.NeighborQueue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
@@ -18,14 +22,6 @@ public class Model {
 
   private static final int NEGATIVE_TABLE_SIZE = 10000000;
 
-  public class Node {
-    int parent;
-    int left;
-    int right;
-    long count;
-    boolean binary;
-  }
-
   private final ReadableMatrix wi;
   private final Matrix wo;
 
@@ -51,10 +47,29 @@ public class Model {
 
   private int[][] paths;
   private boolean[][] codes;
-  private Node[] tree;
+  /** Hierarchical softmax tree: leaves are the labels 0..osz-1, the root is 2 * osz - 2 */
+  private int[] treeLeft;
+  private int[] treeRight;
 
   private transient Random rng;
 
+  private volatile boolean softmaxPruning = false;
+  private volatile boolean normalizePredictions = true;
+  /** L2 norms of the output rows, and row ids by decreasing norm, for softmax pruning */
+  private volatile float[] outputNorms;
+  private volatile int[] outputOrder;
+  private final Object outputNormsLock = new Object();
+
+  /** Relative slack on the Cauchy-Schwarz bound, covering the rounding errors of dot products */
+  private static final float BOUND_SLACK = 1e-4f;
+
+  public static final int DEFAULT_LABEL_CANDIDATES = 64;
+
+  /** Maximum inner product index over the output rows, and the unit vectors it is built over */
+  private volatile NNIndex labelIndex;
+  private volatile ReadableMatrix labelIndexVectors;
+  private volatile int labelCandidates = DEFAULT_LABEL_CANDIDATES;
+
   public Model(Args args,
                int seed,
                ReadableMatrix wi,
@@ -64,7 +79,6 @@ public class Model {
                ReadableQMatrix qwi,
                QMatrix qwo) {
     this.hidden = new Vector(args.getDimension());
-    this.output = new Vector(wo.m());
     this.grad = new Vector(args.getDimension());
     this.rng = new Random(seed);
     this.wi = wi;
@@ -82,6 +96,7 @@ public class Model {
     } else {
       this.osz = wo.m();
     }
+    this.output = new Vector(osz);
     initSigmoid();
     initLog();
   }
@@ -90,6 +105,95 @@ public class Model {
     return this.rng;
   }
 
+  /**
+   * Set to {@code true} to compute the exact top-k labels of softmax and negative sampling models
+   * without scoring every label: output rows are scored by decreasing norm, until
+   * the Cauchy-Schwarz bound {@code |wo[i]| |hidden|} of the remaining rows falls
+   * below the k-th best score.
+   */
+  public void setSoftmaxPruning(boolean softmaxPruning) {
+    this.softmaxPruning = softmaxPruning;
+  }
+
+  public boolean getSoftmaxPruning() {
+    return softmaxPruning;
+  }
+
+  /**
+   * Set to {@code false} to skip the softmax normalizer when softmax pruning is enabled or
+   * a label index is set, and the threshold is 0: the pruned rows are then never scored, and
+   * the predictions hold unnormalized scores (dot products of the hidden vector and output rows) instead of
+   * log-probabilities. Defaults to {@code true}.
+   */
+  public void setNormalizePredictions(boolean normalizePredictions) {
+    this.normalizePredictions = normalizePredictions;
+  }
+
+  public boolean getNormalizePredictions() {
+    return normalizePredictions;
+  }
+
+  /**
+   * Unit vectors over which label indexes are built: the output rows scaled by the inverse
+   * of the largest row norm M, with an extra component {@code sqrt(1 - |wo[i]|^2 / M^2)}.
+   * For a query made of the normalized hidden vector and a zero extra component,
+   * their dot products are proportional to the label scores, which turns the maximum inner
+   * product search into a nearest neighbor search. The rows are computed from the output
+   * matrix when read, which is not copied.
+   */
+  public ReadableMatrix labelIndexVectors() {
+    if (labelIndexVectors != null) {
+      return labelIndexVectors;
+    }
+    synchronized (outputNormsLock) {
+      if (labelIndexVectors != null) {
+        return labelIndexVectors;
+      }
+      initOutputNorms();
+      float maxNorm = osz > 0 ? outputNorms[outputOrder[0]] : 0.0f;
+      boolean qout = quant && args.getQOut();
+      labelIndexVectors = new LabelIndexMatrix(qout ? null : wo, qout ? qwo : null, maxNorm, outputNorms);
+      return labelIndexVectors;
+    }
+  }
+
+  /**
+   * Builds an HNSW index over the output rows, see {@link #setLabelIndex(NNIndex)}.
+   * @param maxConn maximum number of neighbors per node of the graph
+   * @param beamWidth number of candidates explored when inserting a label
+   */
+  public void buildLabelIndex(int maxConn, int beamWidth) {
+    Preconditions.checkState(!args.getLoss().equals(Args.LossName.HS),
+      "Label indexes are not supported by hierarchical softmax models");
+    labelIndex = HnswIndex.build(labelIndexVectors(), maxConn, beamWidth);
+  }
+
+  /**
+   * Sets the index used to retrieve the candidate labels of softmax and negative sampling
+   * models, or {@code null} to score every label. The index must be built over
+   * {@link #labelIndexVectors()}. It is only used when predictions are not normalized
+   * (see {@link #setNormalizePredictions(boolean)}) and the threshold is 0: only the candidates
+   * are then scored, and the top-k labels are approximate. Normalized predictions score every
+   * label for the softmax normalizer anyway, so that their top-k is exact.
+   */
+  public void setLabelIndex(NNIndex labelIndex) {
+    this.labelIndex = labelIndex;
+  }
+
+  public NNIndex getLabelIndex() {
+    return labelIndex;
+  }
+
+  /** Number of candidate labels retrieved from the label index, at least k. */
+  public void setLabelCandidates(int labelCandidates) {
+    Preconditions.checkArgument(labelCandidates > 0, "labelCandidates must be positive");
+    this.labelCandidates = labelCandidates;
+  }
+
+  public int getLabelCandidates() {
+    return labelCandidates;
+  }
+
   public float binaryLogistic(int target, boolean label, float lr) {
     float score = sigmoid(wo.dotRow(hidden, target));
     float slabel = label ? 1.0f : 0.0f;
@@ -201,13 +305,156 @@ public class Model {
                       Vector output) {
     Preconditions.checkArgument(k > 0);
     computeHidden(input, hidden);
+    boolean normalize = normalizePredictions || threshold > 0;
     if (args.getLoss().equals(Args.LossName.HS)) {
-      dfs(k, threshold, 2 * osz - 2, 0.0f, heap, hidden);
+      findKBestHS(k, threshold, heap, hidden);
+    } else if (labelIndex != null && !normalize) {
+      // the softmax normalizer needs every score, from which the exact top-k is as cheap
+      findKBestIndexed(k, heap, hidden);
+    } else if (softmaxPruning) {
+      findKBestPruned(k, threshold, heap, hidden, output, normalize);
     } else {
       findKBest(k, threshold, heap, hidden, output);
     }
   }
 
+  private float dotOutputRow(Vector hidden, int i) {
+    if (quant && args.getQOut()) {
+      return qwo.dotRow(hidden, i);
+    } else {
+      return wo.dotRow(hidden, i);
+    }
+  }
+
+  private void initOutputNorms() {
+    if (outputOrder != null) {
+      return;
+    }
+    synchronized (outputNormsLock) {
+      if (outputOrder != null) {
+        return;
+      }
+      float[] norms = new float[osz];
+      Vector row = new Vector(hsz);
+      for (int i = 0; i < osz; i++) {
+        if (quant && args.getQOut()) {
+          row.zero();
+          row.addRow(qwo, i);
+          norms[i] = row.norm();
+        } else {
+          norms[i] = wo.l2NormRow(i);
+        }
+      }
+      NeighborQueue byNorm = new NeighborQueue(osz, true);
+      for (int i = 0; i < osz; i++) {
+        byNorm.add(i, norms[i]);
+      }
+      int[] order = new int[osz];
+      for (int i = 0; i < osz; i++) {
+        order[i] = byNorm.pop();
+      }
+      outputNorms = norms;
+      outputOrder = order;
+    }
+  }
+
+  /**
+   * Exact top-k of the softmax, pruning the output rows which cannot enter the top-k.
+   * Rows are scored by decreasing norm until the Cauchy-Schwarz bound of the next row
+   * is lower than the k-th best score. If normalize is true, the remaining rows are
+   * scored to compute the softmax normalizer, otherwise the heap holds the raw scores.
+   */
+  public void findKBestPruned(int k,
+                              float threshold,
+                              MinMaxPriorityQueue<Pair<Float, Integer>> heap,
+                              Vector hidden,
+                              Vector output,
+                              boolean normalize) {
+    initOutputNorms();
+    int[] order = outputOrder;
+    float[] norms = outputNorms;
+    float hiddenNorm = hidden.norm() * (1.0f + BOUND_SLACK);
+    NeighborQueue top = new NeighborQueue(k, false);
+    int scored = 0;
+    for (; scored < osz; scored++) {
+      int i = order[scored];
+      if (top.size() == k && norms[i] * hiddenNorm < top.topScore()) {
+        break;
+      }
+      float score = dotOutputRow(hidden, i);
+      output.data[i] = score;
+      top.insertWithOverflow(i, score, k);
+    }
+    if (normalize) {
+      for (int j = scored; j < osz; j++) {
+        int i = order[j];
+        output.data[i] = dotOutputRow(hidden, i);
+      }
+    }
+    addTopK(top, threshold, heap, output, normalize);
+  }
+
+  /**
+   * Approximate top-k of the raw label scores: only the candidate labels retrieved from
+   * the label index are scored, and the heap holds their unnormalized scores.
+   */
+  public void findKBestIndexed(int k,
+                               MinMaxPriorityQueue<Pair<Float, Integer>> heap,
+                               Vector hidden) {
+    NNIndex index = labelIndex;
+    float hiddenNorm = hidden.norm();
+    Vector query = new Vector(hsz + 1);
+    if (hiddenNorm > 0.0f) {
+      for (int j = 0; j < hsz; j++) {
+        query.data[j] = hidden.data[j] / hiddenNorm;
+      }
+    }
+    NeighborQueue candidates = index.search(query, Math.max(k, labelCandidates));
+    NeighborQueue top = new NeighborQueue(k, false);
+    for (int c = 0; c < candidates.size(); c++) {
+      int i = candidates.node(c);
+      top.insertWithOverflow(i, dotOutputRow(hidden, i), k);
+    }
+    while (top.size() > 0) {
+      float score = top.topScore();
+      heap.add(new Pair<>(score, top.pop()));
+    }
+  }
+
+  /**
+   * Adds the pairs of the top heap to the predictions heap, as log-probabilities if normalize
+   * is true (output then holds the scores of every row), as raw scores otherwise.
+   */
+  private void addTopK(NeighborQueue top,
+                       float threshold,
+                       MinMaxPriorityQueue<Pair<Float, Integer>> heap,
+                       Vector output,
+                       boolean normalize) {
+    if (!normalize) {
+      while (top.size() > 0) {
+        float score = top.topScore();
+        heap.add(new Pair<>(score, top.pop()));
+      }
+      return;
+    }
+    float max = output.data[0];
+    for (int i = 0; i < osz; i++) {
+      max = Math.max(output.data[i], max);
+    }
+    float z = 0.0f;
+    for (int i = 0; i < osz; i++) {
+      z += (float) Math.exp(output.data[i] - max);
+    }
+    while (top.size() > 0) {
+      float score = top.topScore();
+      int i = top.pop();
+      float p = (float) Math.exp(score - max) / z;
+      if (p >= threshold) {
+        heap.add(new Pair<>(stdLog(p), i));
+      }
+    }
+  }
+
   public void findKBest(int k,
                         float threshold,
                         MinMaxPriorityQueue<Pair<Float, Integer>> heap,
@@ -226,32 +473,56 @@ public class Model {
     }
   }
 
-  public void dfs(int k,
-                  float threshold,
-                  int node,
-                  float score,
-                  MinMaxPriorityQueue<Pair<Float, Integer>> heap,
-                  Vector hidden) {
-    if (score < stdLog(threshold)) return;
-    if (heap.size() == k && score < heap.peekLast().first()) {
-      return;
-    }
-    if (tree[node].left == -1 && tree[node].right == -1) {
-      heap.add(new Pair<>(score, node));
-      if (heap.size() > k) {
-        Pair<Float, Integer> p = heap.pollLast();
+  /**
+   * Top-k of the hierarchical softmax, by an iterative depth-first search of the tree which
+   * expands the most probable child first. Log-probabilities only decrease from a node to its
+   * children, so subtrees whose root cannot enter the top-k are pruned, and descending towards
+   * the most probable leaves first fills the top-k with good scores early.
+   */
+  public void findKBestHS(int k,
+                          float threshold,
+                          MinMaxPriorityQueue<Pair<Float, Integer>> heap,
+                          Vector hidden) {
+    float logThreshold = stdLog(threshold);
+    NeighborQueue top = new NeighborQueue(k, false);
+    // the depth of the tree is at most osz - 1, and each expansion pushes one pending sibling
+    int[] stackNodes = new int[osz + 1];
+    float[] stackScores = new float[osz + 1];
+    int stackSize = 0;
+    stackNodes[stackSize] = 2 * osz - 2;
+    stackScores[stackSize++] = 0.0f;
+    while (stackSize > 0) {
+      int node = stackNodes[--stackSize];
+      float score = stackScores[stackSize];
+      while (true) {
+        if (score < logThreshold || (top.size() == k && score < top.topScore())) {
+          break;
+        }
+        if (node < osz) {
+          top.insertWithOverflow(node, score, k);
+          break;
+        }
+        float f = dotOutputRow(hidden, node - osz);
+        f = 1f / (1f + (float) Math.exp(-f));
+        float leftScore = score + stdLog(1.0f - f);
+        float rightScore = score + stdLog(f);
+        if (rightScore > leftScore) {
+          stackNodes[stackSize] = treeLeft[node];
+          stackScores[stackSize++] = leftScore;
+          node = treeRight[node];
+          score = rightScore;
+        } else {
+          stackNodes[stackSize] = treeRight[node];
+          stackScores[stackSize++] = rightScore;
+          node = treeLeft[node];
+          score = leftScore;
+        }
       }
-      return;
     }
-    float f;
-    if (quant && args.getQOut()) {
-      f = qwo.dotRow(hidden, node - osz);
-    } else {
-      f = wo.dotRow(hidden, node - osz);
+    while (top.size() > 0) {
+      float score = top.topScore();
+      heap.add(new Pair<>(score, top.pop()));
     }
-    f = 1f / (1f + (float) Math.exp(-f));
-    dfs(k, threshold, tree[node].left, score + stdLog(1.0f - f), heap, hidden);
-    dfs(k, threshold, tree[node].right, score + stdLog(f), heap, hidden);
   }
 
   public void update(int[] input, int target, float lr) {
@@ -293,47 +564,45 @@ public class Model {
   }
 
   public void buildTree(long[] counts) {
-    tree = new Node[2 * osz - 1];
+    int size = 2 * osz - 1;
+    int[] treeParent = new int[size];
+    treeLeft = new int[size];
+    treeRight = new int[size];
+    long[] treeCount = new long[size];
+    boolean[] treeBinary = new boolean[size];
     paths = new int[osz][];
     codes = new boolean[osz][];
-    for (int i = 0; i < 2 * osz - 1; i++) {
-      Node n = new Node();
-      n.parent = -1;
-      n.left = -1;
-      n.right = -1;
-      n.count = 1000000000000000L; // 1e15f
-      n.binary = false;
-      tree[i] = n;
-    }
-    for (int i = 0; i < osz; i++) {
-      tree[i].count = counts[i];
-    }
+    Arrays.fill(treeParent, -1);
+    Arrays.fill(treeLeft, -1);
+    Arrays.fill(treeRight, -1);
+    Arrays.fill(treeCount, 1000000000000000L); // 1e15f
+    System.arraycopy(counts, 0, treeCount, 0, osz);
     int leaf = osz - 1;
     int node = osz;
-    for (int i = osz; i < 2 * osz - 1; i++) {
+    for (int i = osz; i < size; i++) {
       int[] mini = new int[2];
       for (int j = 0; j < 2; j++) {
-        if (leaf >= 0 && tree[leaf].count < tree[node].count) {
+        if (leaf >= 0 && treeCount[leaf] < treeCount[node]) {
           mini[j] = leaf--;
         } else {
           mini[j] = node++;
         }
       }
-      tree[i].left = mini[0];
-      tree[i].right = mini[1];
-      tree[i].count = tree[mini[0]].count + tree[mini[1]].count;
-      tree[mini[0]].parent = i;
-      tree[mini[1]].parent = i;
-      tree[mini[1]].binary = true;
+      treeLeft[i] = mini[0];
+      treeRight[i] = mini[1];
+      treeCount[i] = treeCount[mini[0]] + treeCount[mini[1]];
+      treeParent[mini[0]] = i;
+      treeParent[mini[1]] = i;
+      treeBinary[mini[1]] = true;
     }
     for (int i = 0; i < osz; i++) {
       List<Integer> path = new ArrayList<>();
       List<Boolean> code = new ArrayList<>();
       int j = i;
-      while (tree[j].parent != -1) {
-        path.add(tree[j].parent - osz);
-        code.add(tree[j].binary);
-        j = tree[j].parent;
+      while (treeParent[j] != -1) {
+        path.add(treeParent[j] - osz);
+        code.add(treeBinary[j]);
+        j = treeParent[j];
       }
       paths[i] = Ints.toArray(path);
       codes[i] = Booleans.toArray(code);
@@ -1,7 +1,8 @@
 package fasttext;
 
-import fasttext.store.InputStreamFastTextInput;
+import fasttext.store.FastTextInput;
 import fasttext.store.OutputStreamFastTextOutput;
+import fasttext.util.VectorUtil;
 
 import java.io.IOException;
 import java.util.Random;
@@ -96,6 +97,17 @@ public class ProductQuantizer {
     }
   }
 
+  /**
+   * Decodes the codes of a one-dimensional quantizer, such as the norms quantizer.
+   */
+  public float[] decodeNorms(QCodes normCodes, int m) {
+    float[] norms = new float[m];
+    for (int i = 0; i < m; i++) {
+      norms[i] = centroids[getCentroidsPosition(0, normCodes.get(i))];
+    }
+    return norms;
+  }
+
   private float assignCentroid(float[] x, int xStartPosition, int c0Position, QCodes codes, int codeStartPosition, int d) {
     throw new UnsupportedOperationException("Not implemented yet");
   }
@@ -127,16 +139,44 @@ public class ProductQuantizer {
   public float mulCode(Vector x, QCodes codes, int t, float alpha) {
     float res = 0.0f;
     int d = dsub;
-    int codePos = nsubq + t;
+    int codePos = nsubq * t;
     for (int m = 0; m < nsubq; m++) {
       int c = getCentroidsPosition(m, codes.get(m + codePos));
       if (m == nsubq - 1) {
         d = lastdsub;
       }
-      for(int n = 0; n < d; n++) {
-        res += x.data[m * dsub + n] * centroids[c * n];
+      res += VectorUtil.dotProduct(x.data, m * dsub, centroids, c, d);
+    }
+    return res * alpha;
+  }
+
+  /**
+   * Computes the dot products of x with every centroid of every sub-quantizer.
+   * The dot product of x with a code is then a sum of nsubq table lookups
+   * (asymmetric distance computation).
+   * @see #mulCode(float[], QCodes, int, float)
+   */
+  public float[] dotTable(Vector x) {
+    float[] table = new float[nsubq * KSUB];
+    int d = dsub;
+    for (int m = 0; m < nsubq; m++) {
+      if (m == nsubq - 1) {
+        d = lastdsub;
+      }
+      for (int i = 0; i < KSUB; i++) {
+        int c = getCentroidsPosition(m, i);
+        table[m * KSUB + i] = VectorUtil.dotProduct(x.data, m * dsub, centroids, c, d);
       }
     }
+    return table;
+  }
+
+  public float mulCode(float[] dotTable, QCodes codes, int t, float alpha) {
+    float res = 0.0f;
+    int codePos = nsubq * t;
+    for (int m = 0; m < nsubq; m++) {
+      res += dotTable[m * KSUB + codes.get(m + codePos)];
+    }
     return res * alpha;
   }
 
@@ -148,9 +188,7 @@ public class ProductQuantizer {
       if (m == nsubq - 1) {
         d = lastdsub;
       }
-      for(int n = 0; n < d; n++) {
-        x.data[m * dsub + n] += alpha * centroids[c + n];
-      }
+      VectorUtil.axpy(alpha, centroids, c, x.data, m * dsub, d);
     }
   }
 
@@ -164,15 +202,13 @@ public class ProductQuantizer {
     }
   }
 
-  public static ProductQuantizer load(InputStreamFastTextInput is) throws IOException {
+  public static ProductQuantizer load(FastTextInput is) throws IOException {
     int dim = is.readInt();
     int nsubq = is.readInt();
     int dsub = is.readInt();
     int lastdsub = is.readInt();
     float[] centroids = new float[dim * KSUB];
-    for (int i = 0; i < centroids.length; i++) {
-      centroids[i] = is.readFloat();
-    }
+    is.readFloats(centroids, 0, centroids.length);
     return new ProductQuantizer(dim, nsubq, dsub, lastdsub, centroids);
   }
 
@@ -1,7 +1,7 @@
 package fasttext;
 
 import com.google.common.base.Preconditions;
-import fasttext.store.InputStreamFastTextInput;
+import fasttext.store.FastTextInput;
 import fasttext.store.OutputStreamFastTextOutput;
 import fasttext.store.OutputStreamResourceOutput;
 
@@ -14,6 +14,7 @@ public class QMatrix implements ReadableQMatrix {
   private final ProductQuantizer pq;
   private final QCodeArray codes;
   private final QCodeArray normCodes;
+  private final float[] norms;
   private final boolean qnorm;
   private final int m;
   private final int n;
@@ -32,6 +33,7 @@ public class QMatrix implements ReadableQMatrix {
     this.pq = pq;
     this.normCodes = normCodes;
     this.npq = npq;
+    this.norms = qnorm ? npq.decodeNorms(normCodes, m) : null;
   }
 
   public QMatrix(Matrix mat, int dsub, boolean qnorm) {
@@ -44,9 +46,11 @@ public class QMatrix implements ReadableQMatrix {
     if (this.qnorm) {
       this.normCodes = new QCodeArray(this.m);
       this.npq = new ProductQuantizer(1, 1);
+      this.norms = new float[this.m];
     } else {
       this.normCodes = null;
       this.npq = null;
+      this.norms = null;
     }
     quantize(mat);
   }
@@ -60,9 +64,11 @@ public class QMatrix implements ReadableQMatrix {
     if (mat.qnorm) {
       this.normCodes = mat.normCodes;
       this.npq = mat.npq;
+      this.norms = mat.norms;
     } else {
       this.normCodes = null;
       this.npq = null;
+      this.norms = null;
     }
   }
 
@@ -75,23 +81,54 @@ public class QMatrix implements ReadableQMatrix {
   }
 
   public void addToVector(Vector x, int t) {
-    float norm = 1f;
-    if (qnorm) {
-      int cPosition = npq.getCentroidsPosition(0, normCodes.get(t));
-      norm = npq.getCentroid(cPosition);
-    }
+    float norm = qnorm ? norms[t] : 1f;
     pq.addCode(x, codes, t, norm);
   }
 
   public float dotRow(Vector vec, int i) {
     Preconditions.checkPositionIndex(i, m);
     Preconditions.checkArgument(vec.size() == n);
-    float norm = 1f;
+    float norm = qnorm ? norms[i] : 1f;
+    return pq.mulCode(vec, codes, i, norm);
+  }
+
+  /** Dot product of row i with the first n values of vec, which may be longer than a row. */
+  float dotRowPrefix(Vector vec, int i) {
+    float norm = qnorm ? norms[i] : 1f;
+    return pq.mulCode(vec, codes, i, norm);
+  }
+
+  /**
+   * Lookup table of the dot products of vec with the quantizer centroids.
+   * @see #dotRow(float[], int)
+   */
+  public float[] dotTable(Vector vec) {
+    Preconditions.checkArgument(vec.size() == n);
+    return pq.dotTable(vec);
+  }
+
+  /**
+   * Dot product of row i with the vector whose lookup table is given.
+   * @see #dotTable(Vector)
+   */
+  public float dotRow(float[] dotTable, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    float norm = qnorm ? norms[i] : 1f;
+    return pq.mulCode(dotTable, codes, i, norm);
+  }
+
+  /**
+   * L2 norm of row i. With quantized norms, returns the decoded norm,
+   * otherwise the norm of the decoded row.
+   */
+  public float rowNorm(int i) {
+    Preconditions.checkPositionIndex(i, m);
     if (qnorm) {
-      int cPosition = npq.getCentroidsPosition(0, normCodes.get(i));
-      norm = npq.getCentroid(cPosition);
+      return norms[i];
     }
-    return pq.mulCode(vec, codes, i, norm);
+    Vector row = new Vector(n);
+    pq.addCode(row, codes, i, 1f);
+    return row.norm();
   }
 
   public int m() {
@@ -125,7 +162,7 @@ public class QMatrix implements ReadableQMatrix {
     return builder.toString();
   }
 
-  public static QMatrix load(InputStreamFastTextInput is) throws IOException {
+  public static QMatrix load(FastTextInput is) throws IOException {
     boolean qnorm = is.readBoolean();
     int m = (int) is.readLong();
     int n = (int) is.readLong();
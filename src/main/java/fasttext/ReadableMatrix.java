@@ -13,6 +13,8 @@ public interface ReadableMatrix extends Closeable, Cloneable {
 
   float dotRow(final Vector vec, int i);
 
+  void addToVector(Vector x, int i, float a);
+
   float l2NormRow(int i);
 
   Vector l2NormRow(Vector norms);
@@ -27,4 +29,10 @@ public interface ReadableMatrix extends Closeable, Cloneable {
 
   void saveToMMap(OutputStream os) throws IOException;
 
+  /**
+   * Saves a memory-mapped matrix, see {@link fasttext.mmap.MMapMatrixFormat}.
+   * @param alignRows pad rows to {@link fasttext.mmap.MMapMatrixFormat#ROW_ALIGNMENT} bytes
+   */
+  void saveToMMap(OutputStream os, boolean alignRows) throws IOException;
+
 }
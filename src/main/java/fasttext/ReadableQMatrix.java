@@ -11,6 +11,12 @@ public interface ReadableQMatrix extends Closeable, Cloneable {
 
   float dotRow(Vector vec, int i);
 
+  float[] dotTable(Vector vec);
+
+  float dotRow(float[] dotTable, int i);
+
+  float rowNorm(int i);
+
   int m();
 
   int n();
@@ -53,17 +53,13 @@ public class Vector {
   public void addRow(ReadableMatrix A, int i, float a) {
     Preconditions.checkPositionIndex(i, A.m());
     Preconditions.checkArgument(m == A.n());
-    for (int j = 0; j < A.n(); j++) {
-      data[j] += a * A.at(i, j);
-    }
+    A.addToVector(this, i, a);
   }
 
   public void addRow(ReadableMatrix A, int i) {
     Preconditions.checkPositionIndex(i, A.m());
     Preconditions.checkArgument(m == A.n());
-    for (int j = 0; j < A.n(); j++) {
-      data[j] += A.at(i, j);
-    }
+    A.addToVector(this, i, 1.0f);
   }
 
   public void addRow(ReadableQMatrix A, int i) {
@@ -0,0 +1,420 @@
+package fasttext.index;
+
+import com.google.common.base.Preconditions;
+import fasttext.ReadableMatrix;
+import fasttext.Vector;
+import fasttext.store.OutputStreamResourceOutput;
+import fasttext.store.ResourceInput;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph over the rows of a matrix of
+ * unit-length vectors, scored by dot product.
+ *
+ * <p>Nodes are assigned a random level with an exponentially decaying distribution.
+ * A search greedily descends the upper levels from the entry point, then explores
+ * the bottom level with a beam of {@code efSearch} candidates. Neighbors are
+ * selected with the diversity heuristic of the original paper
+ * (Malkov and Yashunin, 2016).
+ *
+ * <p>The graph only holds node ids: the vectors stay in the matrix given at build
+ * or load time, typically the precomputed word vectors of the model. Every searching
+ * thread reads them through its own clone of the matrix, so that memory-mapped
+ * vectors can be searched concurrently.
+ */
+public class HnswIndex implements NNIndex {
+
+  private static final Logger logger = Logger.getLogger(HnswIndex.class.getName());
+
+  public static final int MAGIC = 0x484e5357;
+  public static final int VERSION = 1;
+
+  public static final int DEFAULT_MAX_CONN = 16;
+  public static final int DEFAULT_BEAM_WIDTH = 100;
+  public static final int DEFAULT_EF_SEARCH = 64;
+  private static final long SEED = 42L;
+
+  private final ReadableMatrix vectors;
+  private final int maxConn;
+  private final int beamWidth;
+  private volatile int efSearch;
+  /** graph[node][level] holds the neighbors of node at level */
+  private final int[][][] graph;
+  private int entryPoint;
+  private int maxLevel;
+
+  private final ThreadLocal<SearchContext> contexts = new ThreadLocal<SearchContext>() {
+    @Override
+    protected SearchContext initialValue() {
+      return new SearchContext(vectors, graph.length);
+    }
+  };
+
+  private HnswIndex(ReadableMatrix vectors, int maxConn, int beamWidth, int efSearch,
+                    int[][][] graph, int entryPoint, int maxLevel) {
+    this.vectors = vectors;
+    this.maxConn = maxConn;
+    this.beamWidth = beamWidth;
+    this.efSearch = efSearch;
+    this.graph = graph;
+    this.entryPoint = entryPoint;
+    this.maxLevel = maxLevel;
+  }
+
+  /**
+   * Builds the graph over the first size rows of vectors.
+   * @param vectors unit-length vectors
+   * @param size number of indexed rows
+   * @param maxConn maximum number of neighbors per node on the upper levels, twice that on the bottom level
+   * @param beamWidth number of candidates explored when inserting a node (efConstruction)
+   */
+  public static HnswIndex build(ReadableMatrix vectors, int size, int maxConn, int beamWidth) {
+    Preconditions.checkArgument(maxConn > 0, "maxConn must be positive");
+    Preconditions.checkArgument(beamWidth > 0, "beamWidth must be positive");
+    Preconditions.checkArgument(size >= 0 && size <= vectors.m(), "Invalid index size: %s", size);
+    HnswIndex index = new HnswIndex(vectors, maxConn, beamWidth, DEFAULT_EF_SEARCH,
+      new int[size][][], -1, -1);
+    Random rng = new Random(SEED);
+    double ml = 1.0 / Math.log(Math.max(maxConn, 2));
+    long start = System.nanoTime();
+    for (int node = 0; node < size; node++) {
+      int level = (int) (-Math.log(1.0 - rng.nextDouble()) * ml);
+      index.insert(node, level);
+      if ((node + 1) % 100000 == 0) {
+        logger.info(String.format("Indexed %d/%d words (%.1fs)", node + 1, size,
+          (System.nanoTime() - start) / 1000000000d));
+      }
+    }
+    return index;
+  }
+
+  /** Builds the graph over all the rows of vectors. */
+  public static HnswIndex build(ReadableMatrix vectors, int maxConn, int beamWidth) {
+    return build(vectors, vectors.m(), maxConn, beamWidth);
+  }
+
+  public static HnswIndex build(ReadableMatrix vectors) {
+    return build(vectors, DEFAULT_MAX_CONN, DEFAULT_BEAM_WIDTH);
+  }
+
+  /** Number of candidates explored by a search, at least k. */
+  public void setEfSearch(int efSearch) {
+    Preconditions.checkArgument(efSearch > 0, "efSearch must be positive");
+    this.efSearch = efSearch;
+  }
+
+  public int getEfSearch() {
+    return efSearch;
+  }
+
+  public int size() {
+    return graph.length;
+  }
+
+  private int maxConn(int level) {
+    return level == 0 ? 2 * maxConn : maxConn;
+  }
+
+  private static Vector rowVector(ReadableMatrix vectors, int node) {
+    Vector vec = new Vector(vectors.n());
+    vec.addRow(vectors, node);
+    return vec;
+  }
+
+  private void insert(int node, int level) {
+    graph[node] = new int[level + 1][];
+    for (int l = 0; l <= level; l++) {
+      graph[node][l] = new int[0];
+    }
+    if (entryPoint == -1) {
+      entryPoint = node;
+      maxLevel = level;
+      return;
+    }
+    SearchContext ctx = contexts.get();
+    Vector query = rowVector(ctx.vectors, node);
+    int ep = entryPoint;
+    for (int l = maxLevel; l > level; l--) {
+      ep = greedySearch(ctx, query, ep, l);
+    }
+    NeighborQueue eps = new NeighborQueue(1, false);
+    eps.add(ep, ctx.vectors.dotRow(query, ep));
+    for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+      NeighborQueue candidates = searchLevel(ctx, query, eps, beamWidth, l, null);
+      int[] neighbors = selectNeighbors(ctx.vectors, candidates, maxConn(l));
+      graph[node][l] = neighbors;
+      for (int neighbor : neighbors) {
+        connect(ctx.vectors, neighbor, node, l);
+      }
+      eps = candidates;
+    }
+    if (level > maxLevel) {
+      entryPoint = node;
+      maxLevel = level;
+    }
+  }
+
+  /** Adds node to the neighbors of target, pruning them when there are too many. */
+  private void connect(ReadableMatrix vectors, int target, int node, int level) {
+    int[] neighbors = graph[target][level];
+    int[] updated = Arrays.copyOf(neighbors, neighbors.length + 1);
+    updated[neighbors.length] = node;
+    if (updated.length > maxConn(level)) {
+      Vector vec = rowVector(vectors, target);
+      NeighborQueue candidates = new NeighborQueue(updated.length, false);
+      for (int neighbor : updated) {
+        candidates.add(neighbor, vectors.dotRow(vec, neighbor));
+      }
+      updated = selectNeighbors(vectors, candidates, maxConn(level));
+    }
+    graph[target][level] = updated;
+  }
+
+  /**
+   * Diversity heuristic: a candidate is kept only if it is closer to the base node
+   * than to every already selected neighbor. Leaves the candidates min-heap unchanged.
+   */
+  private static int[] selectNeighbors(ReadableMatrix vectors, NeighborQueue candidates, int max) {
+    int n = candidates.size();
+    NeighborQueue ordered = new NeighborQueue(n, true);
+    for (int i = 0; i < n; i++) {
+      ordered.add(candidates.node(i), candidates.score(i));
+    }
+    int[] sorted = new int[n];
+    float[] scores = new float[n];
+    for (int i = 0; i < n; i++) {
+      scores[i] = ordered.topScore();
+      sorted[i] = ordered.pop();
+    }
+    int[] selected = new int[Math.min(n, max)];
+    Vector[] selectedVecs = new Vector[selected.length];
+    int count = 0;
+    for (int i = 0; i < n && count < max; i++) {
+      boolean diverse = true;
+      for (int j = 0; j < count; j++) {
+        if (vectors.dotRow(selectedVecs[j], sorted[i]) > scores[i]) {
+          diverse = false;
+          break;
+        }
+      }
+      if (diverse) {
+        selected[count] = sorted[i];
+        selectedVecs[count] = rowVector(vectors, sorted[i]);
+        count++;
+      }
+    }
+    return count == selected.length ? selected : Arrays.copyOf(selected, count);
+  }
+
+  private int greedySearch(SearchContext ctx, Vector query, int ep, int level) {
+    ReadableMatrix vectors = ctx.vectors;
+    float best = vectors.dotRow(query, ep);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int neighbor : graph[ep][level]) {
+        float score = vectors.dotRow(query, neighbor);
+        if (score > best) {
+          best = score;
+          ep = neighbor;
+          changed = true;
+        }
+      }
+    }
+    return ep;
+  }
+
+  /**
+   * Beam search on one level, starting from the given entry points.
+   * Returns a min-heap of the ef best accepted nodes found. Rejected nodes are
+   * still explored, as paths to accepted ones.
+   */
+  private NeighborQueue searchLevel(SearchContext ctx, Vector query, NeighborQueue eps, int ef, int level,
+                                    IntPredicate accept) {
+    ReadableMatrix vectors = ctx.vectors;
+    Visited v = ctx.visited;
+    NeighborQueue results = new NeighborQueue(ef, false);
+    NeighborQueue candidates = new NeighborQueue(ef, true);
+    v.clear();
+    for (int i = 0; i < eps.size(); i++) {
+      int ep = eps.node(i);
+      v.visit(ep);
+      if (accept == null || accept.test(ep)) {
+        results.insertWithOverflow(ep, eps.score(i), ef);
+      }
+      candidates.add(ep, eps.score(i));
+    }
+    while (candidates.size() > 0) {
+      float score = candidates.topScore();
+      if (results.size() >= ef && score < results.topScore()) {
+        break;
+      }
+      int node = candidates.pop();
+      for (int neighbor : graph[node][level]) {
+        if (v.visit(neighbor)) {
+          float s = vectors.dotRow(query, neighbor);
+          if (results.size() < ef || s > results.topScore()) {
+            candidates.add(neighbor, s);
+            if (accept == null || accept.test(neighbor)) {
+              results.insertWithOverflow(neighbor, s, ef);
+            }
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  public NeighborQueue search(Vector query, int k) {
+    return search(query, k, null);
+  }
+
+  public NeighborQueue search(Vector query, int k, IntPredicate accept) {
+    Preconditions.checkArgument(query.size() == vectors.n());
+    NeighborQueue results = new NeighborQueue(k, false);
+    if (entryPoint == -1 || k <= 0) {
+      return results;
+    }
+    SearchContext ctx = contexts.get();
+    int ep = entryPoint;
+    for (int l = maxLevel; l > 0; l--) {
+      ep = greedySearch(ctx, query, ep, l);
+    }
+    NeighborQueue eps = new NeighborQueue(1, false);
+    eps.add(ep, ctx.vectors.dotRow(query, ep));
+    NeighborQueue candidates = searchLevel(ctx, query, eps, Math.max(efSearch, k), 0, accept);
+    while (candidates.size() > 0) {
+      float score = candidates.topScore();
+      results.insertWithOverflow(candidates.pop(), score, k);
+    }
+    return results;
+  }
+
+  /**
+   * Saves the graph: a header (magic, version, size, maxConn, beamWidth, efSearch,
+   * entry point, max level), then for every node its number of levels
+   * and for every level its number of neighbors followed by the neighbors.
+   */
+  public void save(OutputStream os) throws IOException {
+    try (OutputStreamResourceOutput out = new OutputStreamResourceOutput("hnsw", os)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(graph.length);
+      out.writeInt(maxConn);
+      out.writeInt(beamWidth);
+      out.writeInt(efSearch);
+      out.writeInt(entryPoint);
+      out.writeInt(maxLevel);
+      for (int[][] levels : graph) {
+        out.writeInt(levels.length);
+        for (int[] neighbors : levels) {
+          out.writeInt(neighbors.length);
+          for (int neighbor : neighbors) {
+            out.writeInt(neighbor);
+          }
+        }
+      }
+    }
+  }
+
+  /** Loads a graph saved by {@link #save(OutputStream)}, over the given vectors. */
+  public static HnswIndex load(ResourceInput in, ReadableMatrix vectors) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IllegalArgumentException("Invalid HNSW index file");
+    }
+    int version = in.readInt();
+    if (version > VERSION) {
+      throw new IllegalArgumentException("HNSW index version (" + version +
+        ") doesn't match current version (" + VERSION + ")");
+    }
+    int size = in.readInt();
+    if (size > vectors.m()) {
+      throw new IllegalArgumentException("HNSW index size (" + size +
+        ") is greater than the number of vectors (" + vectors.m() + ")");
+    }
+    int maxConn = in.readInt();
+    int beamWidth = in.readInt();
+    int efSearch = in.readInt();
+    int entryPoint = in.readInt();
+    int maxLevel = in.readInt();
+    int[][][] graph = new int[size][][];
+    for (int node = 0; node < size; node++) {
+      int[][] levels = new int[in.readInt()][];
+      for (int l = 0; l < levels.length; l++) {
+        int[] neighbors = new int[in.readInt()];
+        for (int i = 0; i < neighbors.length; i++) {
+          neighbors[i] = in.readInt();
+        }
+        levels[l] = neighbors;
+      }
+      graph[node] = levels;
+    }
+    return new HnswIndex(vectors, maxConn, beamWidth, efSearch, graph, entryPoint, maxLevel);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("HnswIndex(size=");
+    builder.append(graph.length);
+    builder.append(", maxConn=");
+    builder.append(maxConn);
+    builder.append(", beamWidth=");
+    builder.append(beamWidth);
+    builder.append(", efSearch=");
+    builder.append(efSearch);
+    builder.append(", maxLevel=");
+    builder.append(maxLevel);
+    builder.append(")");
+    return builder.toString();
+  }
+
+  /** Per-thread search state: a clone of the vectors and the visited nodes. */
+  private static class SearchContext {
+    private final ReadableMatrix vectors;
+    private final Visited visited;
+
+    SearchContext(ReadableMatrix vectors, int size) {
+      try {
+        this.vectors = vectors.clone();
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException("Could not clone vectors", e);
+      }
+      this.visited = new Visited(size);
+    }
+  }
+
+  /** Visited nodes of a search, cleared in constant time by bumping a generation stamp. */
+  private static class Visited {
+    private final int[] stamps;
+    private int generation = 0;
+
+    Visited(int size) {
+      this.stamps = new int[size];
+    }
+
+    void clear() {
+      generation++;
+      if (generation == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        generation = 1;
+      }
+    }
+
+    /** Marks node as visited, returns false if it already was. */
+    boolean visit(int node) {
+      if (stamps[node] == generation) {
+        return false;
+      }
+      stamps[node] = generation;
+      return true;
+    }
+  }
+
+}
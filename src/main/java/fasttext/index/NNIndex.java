@@ -0,0 +1,33 @@
+package fasttext.index;
+
+import fasttext.Vector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.IntPredicate;
+
+/**
+ * Nearest neighbor index over the normalized word vectors of a model.
+ * Implementations must be safe to search from several threads.
+ */
+public interface NNIndex {
+
+  /**
+   * Searches the k words whose vectors have the highest dot product with a unit-length query.
+   * @return a min-heap of (word id, cosine similarity) pairs, holding at most k pairs
+   */
+  NeighborQueue search(Vector query, int k);
+
+  /**
+   * Searches the k accepted words whose vectors have the highest dot product with a unit-length query.
+   * @param accept accepted word ids, or {@code null} to accept all words
+   * @return a min-heap of (word id, cosine similarity) pairs, holding at most k pairs
+   */
+  NeighborQueue search(Vector query, int k, IntPredicate accept);
+
+  /** Number of indexed words: the words whose id is lower than size */
+  int size();
+
+  void save(OutputStream os) throws IOException;
+
+}
@@ -0,0 +1,146 @@
+package fasttext.index;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (node, score) pairs stored in primitive arrays.
+ *
+ * <p>A min-heap keeps the best nodes seen so far at the bottom and the
+ * worst one on top, which is what a top-k collector needs. A max-heap
+ * keeps the best node on top. Ties on scores are broken by node id,
+ * the lowest id being the best.
+ */
+public class NeighborQueue {
+
+  private final boolean maxHeap;
+  private float[] scores;
+  private int[] nodes;
+  private int size;
+
+  public NeighborQueue(int initialSize, boolean maxHeap) {
+    this.maxHeap = maxHeap;
+    // slot 0 is unused, the heap is 1-based
+    this.scores = new float[Math.max(initialSize, 1) + 1];
+    this.nodes = new int[Math.max(initialSize, 1) + 1];
+    this.size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /** Adds a pair to the heap, growing it if needed. */
+  public void add(int node, float score) {
+    if (size + 1 == scores.length) {
+      int newLength = scores.length + (scores.length >> 1) + 1;
+      scores = Arrays.copyOf(scores, newLength);
+      nodes = Arrays.copyOf(nodes, newLength);
+    }
+    size++;
+    scores[size] = score;
+    nodes[size] = node;
+    upHeap(size);
+  }
+
+  /**
+   * Adds a pair to a min-heap holding at most maxSize pairs, i.e. collects the maxSize best pairs.
+   * When the heap is full, the pair replaces the top of the heap if it is better.
+   * Returns true if the pair was added.
+   */
+  public boolean insertWithOverflow(int node, float score, int maxSize) {
+    if (size < maxSize) {
+      add(node, score);
+      return true;
+    }
+    if (size > 0 && lessThan(nodes[1], scores[1], node, score)) {
+      scores[1] = score;
+      nodes[1] = node;
+      downHeap(1);
+      return true;
+    }
+    return false;
+  }
+
+  public int topNode() {
+    return nodes[1];
+  }
+
+  public float topScore() {
+    return scores[1];
+  }
+
+  /** Removes the top of the heap and returns its node. */
+  public int pop() {
+    int node = nodes[1];
+    scores[1] = scores[size];
+    nodes[1] = nodes[size];
+    size--;
+    if (size > 0) {
+      downHeap(1);
+    }
+    return node;
+  }
+
+  /** Node at position i of the heap storage, in no particular order. */
+  public int node(int i) {
+    return nodes[i + 1];
+  }
+
+  /** Score at position i of the heap storage, in no particular order. */
+  public float score(int i) {
+    return scores[i + 1];
+  }
+
+  /** Returns true if (n1, s1) is ordered before (n2, s2) in this heap. */
+  private boolean lessThan(int n1, float s1, int n2, float s2) {
+    if (maxHeap) {
+      return s1 > s2 || (s1 == s2 && n1 < n2);
+    }
+    return s1 < s2 || (s1 == s2 && n1 > n2);
+  }
+
+  private void upHeap(int i) {
+    float score = scores[i];
+    int node = nodes[i];
+    int j = i >>> 1;
+    while (j > 0 && lessThan(node, score, nodes[j], scores[j])) {
+      scores[i] = scores[j];
+      nodes[i] = nodes[j];
+      i = j;
+      j = j >>> 1;
+    }
+    scores[i] = score;
+    nodes[i] = node;
+  }
+
+  private void downHeap(int i) {
+    float score = scores[i];
+    int node = nodes[i];
+    int j = i << 1;
+    while (j <= size) {
+      int k = j + 1;
+      if (k <= size && lessThan(nodes[k], scores[k], nodes[j], scores[j])) {
+        j = k;
+      }
+      if (!lessThan(nodes[j], scores[j], node, score)) {
+        break;
+      }
+      scores[i] = scores[j];
+      nodes[i] = nodes[j];
+      i = j;
+      j = i << 1;
+    }
+    scores[i] = score;
+    nodes[i] = node;
+  }
+
+  @Override
+  public String toString() {
+    return "NeighborQueue(size=" + size + ", maxHeap=" + maxHeap + ")";
+  }
+
+}
@@ -0,0 +1,130 @@
+package fasttext.mmap;
+
+import com.google.common.base.Preconditions;
+import fasttext.store.OutputStreamResourceOutput;
+import fasttext.store.ResourceInput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Access counts of the rows of a matrix, sampled from the rows added to vectors, e.g. the
+ * word and n-gram bucket rows of predictions. A profile saved by a running process can be
+ * loaded on restart to warm its hottest rows up, see {@link WarmableMatrix#warmUp(int[])}.
+ */
+public final class HotRowsProfile {
+
+  public static final int MAGIC = 0x484f5452;
+  public static final int VERSION = 1;
+
+  private final AtomicIntegerArray counts;
+  private final int sampleRate;
+
+  /**
+   * @param m number of rows of the matrix
+   * @param sampleRate records one row access out of sampleRate on average
+   */
+  public HotRowsProfile(int m, int sampleRate) {
+    Preconditions.checkArgument(m >= 0, "m must be positive");
+    Preconditions.checkArgument(sampleRate >= 1, "sampleRate must be at least 1");
+    this.counts = new AtomicIntegerArray(m);
+    this.sampleRate = sampleRate;
+  }
+
+  public int m() {
+    return counts.length();
+  }
+
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /** Records an access to row i, if sampled. */
+  public void record(int i) {
+    if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+      counts.incrementAndGet(i);
+    }
+  }
+
+  /** Returns the recorded accesses to row i. */
+  public int count(int i) {
+    return counts.get(i);
+  }
+
+  /**
+   * Returns the limit most accessed rows, sorted by row so that they are read in file order.
+   */
+  public int[] hotRows(int limit) {
+    int m = counts.length();
+    long[] keys = new long[m];
+    int size = 0;
+    for (int i = 0; i < m; i++) {
+      int count = counts.get(i);
+      if (count > 0) {
+        // higher count first, then lower row
+        keys[size++] = ((long) count << 32) | (Integer.MAX_VALUE - i);
+      }
+    }
+    Arrays.sort(keys, 0, size);
+    int[] rows = new int[Math.min(limit, size)];
+    for (int k = 0; k < rows.length; k++) {
+      rows[k] = Integer.MAX_VALUE - (int) keys[size - 1 - k];
+    }
+    Arrays.sort(rows);
+    return rows;
+  }
+
+  /** Saves the recorded rows and their counts, while accesses may still be recorded. */
+  public void save(OutputStream os) throws IOException {
+    int m = counts.length();
+    int[] snapshot = new int[m];
+    int size = 0;
+    for (int i = 0; i < m; i++) {
+      snapshot[i] = counts.get(i);
+      if (snapshot[i] > 0) {
+        size++;
+      }
+    }
+    try (OutputStreamResourceOutput out = new OutputStreamResourceOutput("hotrows", os)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(m);
+      out.writeInt(sampleRate);
+      out.writeInt(size);
+      for (int i = 0; i < m; i++) {
+        if (snapshot[i] > 0) {
+          out.writeInt(i);
+          out.writeInt(snapshot[i]);
+        }
+      }
+    }
+  }
+
+  /** Loads a profile saved by {@link #save(OutputStream)}, to replay or keep recording it. */
+  public static HotRowsProfile load(ResourceInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IllegalArgumentException("Invalid hot rows profile: " + in);
+    }
+    int version = in.readInt();
+    if (version > VERSION) {
+      throw new IllegalArgumentException("Hot rows profile version (" + version +
+        ") doesn't match current version (" + VERSION + ")");
+    }
+    HotRowsProfile profile = new HotRowsProfile(in.readInt(), in.readInt());
+    int size = in.readInt();
+    for (int k = 0; k < size; k++) {
+      int i = in.readInt();
+      profile.counts.set(i, in.readInt());
+    }
+    return profile;
+  }
+
+  @Override
+  public String toString() {
+    return "HotRowsProfile(m=" + counts.length() + ", sampleRate=" + sampleRate + ")";
+  }
+
+}
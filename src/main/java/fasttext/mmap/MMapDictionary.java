@@ -232,8 +232,11 @@ public class MMapDictionary extends BaseDictionary {
   }
 
   public static MMapDictionary load(Args args, MMapFile mmap) throws IOException {
-    ResourceInput in = mmap.openInput();
+    return load(args, mmap, mmap.openInput());
+  }
 
+  /** Loads a dictionary from an input positioned on its start, e.g. a section of a model file. */
+  public static MMapDictionary load(Args args, MMapFile mmap, ResourceInput in) throws IOException {
     // dictionary mmap utilities
     int wordByteArrayLength = in.readInt();
     int subwordsByteArrayLength = in.readInt();
@@ -266,7 +269,8 @@ public class MMapDictionary extends BaseDictionary {
       ids[i] = in.readInt();
     }
 
-    int entriesPositionOffset = 36 + 8 * pruneArrSize + 12 * size;
+    // entries follow the word hashes and ids
+    long entriesPositionOffset = in.getFilePointer();
 
     return new MMapDictionary(args, size, nWords, nLabels, nTokens, pruneIdxSize,
       mmap, in, entriesPositionOffset, wordByteArrayLength, subwordsByteArrayLength,
@@ -0,0 +1,179 @@
+package fasttext.mmap;
+
+import com.google.common.base.Preconditions;
+import fasttext.MatrixEncoding;
+import fasttext.ReadableMatrix;
+import fasttext.Vector;
+import fasttext.store.MMapFile;
+import fasttext.store.ResourceInput;
+import fasttext.util.HalfFloats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Memory-mapped {@link ReadableMatrix} storing 16 bits floats (float16 or bfloat16).
+ * Only supports read-only operations.
+ */
+public class MMapHalfMatrix implements WarmableMatrix {
+
+  private final int m;
+  private final int n;
+  private final MatrixEncoding encoding;
+  private final boolean bfloat16;
+  private final MMapFile mmapFile;
+  private final MMapMatrixFormat.Layout layout;
+  private ResourceInput in;
+  private volatile HotRowsProfile hotRowsProfile;
+
+  MMapHalfMatrix(MMapFile mmapFile, ResourceInput in, MMapMatrixFormat.Layout layout) {
+    this.mmapFile = mmapFile;
+    this.in = in;
+    this.layout = layout;
+    this.m = layout.m();
+    this.n = layout.n();
+    this.encoding = layout.encoding();
+    this.bfloat16 = encoding == MatrixEncoding.BFLOAT16;
+  }
+
+  private float widen(short h) {
+    return bfloat16 ? HalfFloats.bfloat16ToFloat(h) : HalfFloats.halfToFloat(h);
+  }
+
+  private long rowPosition(int i) {
+    return layout.rowPosition(i);
+  }
+
+  private void seekRow(int i) {
+    try {
+      in.seek(rowPosition(i));
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not seek row " + i + " from matrix");
+    }
+  }
+
+  private short readValue() {
+    try {
+      return in.readShort();
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not read value from matrix");
+    }
+  }
+
+  public MatrixEncoding encoding() {
+    return encoding;
+  }
+
+  public float[] atRow(int i) {
+    float[] r = new float[n];
+    seekRow(i);
+    for (int j = 0; j < n; j++) {
+      r[j] = widen(readValue());
+    }
+    return r;
+  }
+
+  public float at(int i, int j) {
+    try {
+      in.seek(rowPosition(i) + (long) j * Short.BYTES);
+      return widen(in.readShort());
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not read value from matrix at i=" + i + " j=" + j);
+    }
+  }
+
+  public float dotRow(final Vector vec, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    Preconditions.checkArgument(vec.size() == n);
+    float[] data = vec.toArray();
+    float d = 0.0f;
+    seekRow(i);
+    for (int j = 0; j < n; j++) {
+      d += widen(readValue()) * data[j];
+    }
+    return d;
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    HotRowsProfile profile = hotRowsProfile;
+    if (profile != null) {
+      profile.record(i);
+    }
+    float[] data = x.toArray();
+    seekRow(i);
+    for (int j = 0; j < n; j++) {
+      data[j] += a * widen(readValue());
+    }
+  }
+
+  public float l2NormRow(int i) {
+    float norm = 0.0f;
+    seekRow(i);
+    for (int j = 0; j < n; j++) {
+      float v = widen(readValue());
+      norm += v * v;
+    }
+    return (float) Math.sqrt(norm);
+  }
+
+  public Vector l2NormRow(Vector norms) {
+    Preconditions.checkArgument(norms.size() == m);
+    for (int i = 0; i < m; i++) {
+      norms.set(i, l2NormRow(i));
+    }
+    return norms;
+  }
+
+  public void warmUp(int[] rows) throws IOException {
+    layout.touchRows(in.clone(), rows);
+  }
+
+  public void setHotRowsProfile(HotRowsProfile profile) {
+    Preconditions.checkArgument(profile == null || profile.m() == m,
+      "Hot rows profile doesn't match the matrix rows");
+    this.hotRowsProfile = profile;
+  }
+
+  public HotRowsProfile getHotRowsProfile() {
+    return hotRowsProfile;
+  }
+
+  public int m() { return m; }
+
+  public int n() { return n; }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("HalfMatrix(m=");
+    builder.append(m);
+    builder.append(", n=");
+    builder.append(n);
+    builder.append(", encoding=");
+    builder.append(encoding);
+    builder.append(", mmap=MMapFile(");
+    builder.append(mmapFile.getPath().toString());
+    builder.append("))");
+    return builder.toString();
+  }
+
+  @Override
+  public MMapHalfMatrix clone() throws CloneNotSupportedException {
+    MMapHalfMatrix m = (MMapHalfMatrix) super.clone();
+    m.in = in.clone();
+    return m;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  public void saveToMMap(OutputStream os) throws IOException {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
+  public void saveToMMap(OutputStream os, boolean alignRows) throws IOException {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
+}
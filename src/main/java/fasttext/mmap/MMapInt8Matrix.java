@@ -0,0 +1,165 @@
+package fasttext.mmap;
+
+import com.google.common.base.Preconditions;
+import fasttext.ReadableMatrix;
+import fasttext.Vector;
+import fasttext.store.MMapFile;
+import fasttext.store.ResourceInput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Memory-mapped {@link ReadableMatrix} storing signed bytes with one scale per row.
+ * Each row is stored as its float scale followed by its codes.
+ * Only supports read-only operations.
+ */
+public class MMapInt8Matrix implements WarmableMatrix {
+
+  private final int m;
+  private final int n;
+  private final MMapFile mmapFile;
+  private final MMapMatrixFormat.Layout layout;
+  private ResourceInput in;
+  private volatile HotRowsProfile hotRowsProfile;
+  private byte[] codes;
+
+  MMapInt8Matrix(MMapFile mmapFile, ResourceInput in, MMapMatrixFormat.Layout layout) {
+    this.mmapFile = mmapFile;
+    this.in = in;
+    this.layout = layout;
+    this.m = layout.m();
+    this.n = layout.n();
+    this.codes = new byte[n];
+  }
+
+  private long rowPosition(int i) {
+    return layout.rowPosition(i);
+  }
+
+  /** Reads the codes of row i in the codes buffer. Returns the row scale. */
+  private float readRow(int i) {
+    try {
+      in.seek(rowPosition(i));
+      float scale = in.readFloat();
+      in.readBytes(codes, 0, n);
+      return scale;
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not read row " + i + " from matrix");
+    }
+  }
+
+  public float[] atRow(int i) {
+    float[] r = new float[n];
+    float scale = readRow(i);
+    for (int j = 0; j < n; j++) {
+      r[j] = scale * codes[j];
+    }
+    return r;
+  }
+
+  public float at(int i, int j) {
+    try {
+      in.seek(rowPosition(i));
+      float scale = in.readFloat();
+      in.seek(rowPosition(i) + Float.BYTES + j);
+      return scale * in.readByte();
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not read value from matrix at i=" + i + " j=" + j);
+    }
+  }
+
+  public float dotRow(final Vector vec, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    Preconditions.checkArgument(vec.size() == n);
+    float[] data = vec.toArray();
+    float scale = readRow(i);
+    float d = 0.0f;
+    for (int j = 0; j < n; j++) {
+      d += codes[j] * data[j];
+    }
+    return d * scale;
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    HotRowsProfile profile = hotRowsProfile;
+    if (profile != null) {
+      profile.record(i);
+    }
+    float[] data = x.toArray();
+    float scale = a * readRow(i);
+    for (int j = 0; j < n; j++) {
+      data[j] += scale * codes[j];
+    }
+  }
+
+  public float l2NormRow(int i) {
+    float scale = readRow(i);
+    float norm = 0.0f;
+    for (int j = 0; j < n; j++) {
+      float v = codes[j];
+      norm += v * v;
+    }
+    return scale * (float) Math.sqrt(norm);
+  }
+
+  public Vector l2NormRow(Vector norms) {
+    Preconditions.checkArgument(norms.size() == m);
+    for (int i = 0; i < m; i++) {
+      norms.set(i, l2NormRow(i));
+    }
+    return norms;
+  }
+
+  public void warmUp(int[] rows) throws IOException {
+    layout.touchRows(in.clone(), rows);
+  }
+
+  public void setHotRowsProfile(HotRowsProfile profile) {
+    Preconditions.checkArgument(profile == null || profile.m() == m,
+      "Hot rows profile doesn't match the matrix rows");
+    this.hotRowsProfile = profile;
+  }
+
+  public HotRowsProfile getHotRowsProfile() {
+    return hotRowsProfile;
+  }
+
+  public int m() { return m; }
+
+  public int n() { return n; }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("Int8Matrix(m=");
+    builder.append(m);
+    builder.append(", n=");
+    builder.append(n);
+    builder.append(", mmap=MMapFile(");
+    builder.append(mmapFile.getPath().toString());
+    builder.append("))");
+    return builder.toString();
+  }
+
+  @Override
+  public MMapInt8Matrix clone() throws CloneNotSupportedException {
+    MMapInt8Matrix m = (MMapInt8Matrix) super.clone();
+    m.in = in.clone();
+    m.codes = new byte[n];
+    return m;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  public void saveToMMap(OutputStream os) throws IOException {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
+  public void saveToMMap(OutputStream os, boolean alignRows) throws IOException {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
+}
@@ -1,32 +1,37 @@
 package fasttext.mmap;
 
 import com.google.common.base.Preconditions;
+import fasttext.MatrixEncoding;
 import fasttext.ReadableMatrix;
 import fasttext.Vector;
 import fasttext.store.MMapFile;
 import fasttext.store.ResourceInput;
+import fasttext.util.VectorUtil;
 
 import java.io.IOException;
 import java.io.OutputStream;
 
 /** Memory-mapped {@link ReadableMatrix}. Only supports read-only operations. */
-public class MMapMatrix implements ReadableMatrix {
+public class MMapMatrix implements WarmableMatrix {
 
   private final int m;
   private final int n;
   private final MMapFile mmapFile;
+  private final MMapMatrixFormat.Layout layout;
   private ResourceInput in;
+  private volatile HotRowsProfile hotRowsProfile;
 
-  private MMapMatrix(MMapFile mmapFile, ResourceInput in, int m, int n) {
+  MMapMatrix(MMapFile mmapFile, ResourceInput in, MMapMatrixFormat.Layout layout) {
     this.mmapFile = mmapFile;
     this.in = in;
-    this.m = m;
-    this.n = n;
+    this.layout = layout;
+    this.m = layout.m();
+    this.n = layout.n();
   }
 
   private float readAt(int i, int j) {
     try {
-      in.seek( 16L + (long) (i * n + j) * 4);
+      in.seek(layout.rowPosition(i) + (long) j * Float.BYTES);
       return in.readFloat();
     } catch (IOException ex) {
       throw new IllegalArgumentException("Could not read float from matrix at i=" + i + " j=" + j);
@@ -36,10 +41,8 @@ public class MMapMatrix implements ReadableMatrix {
   private float[] readRow(int i) {
     float[] r = new float[n];
     try {
-      in.seek(16L + (long) (i * n) * 4);
-      for (int j = 0; j < n; j++) {
-        r[j] = in.readFloat();
-      }
+      in.seek(layout.rowPosition(i));
+      in.readFloats(r, 0, n);
     } catch (IOException ex) {
       throw new IllegalArgumentException("Could not read row " + i + " from matrix");
     }
@@ -57,12 +60,23 @@ public class MMapMatrix implements ReadableMatrix {
   public float dotRow(final Vector vec, int i) {
     Preconditions.checkPositionIndex(i, m);
     Preconditions.checkArgument(vec.size() == n);
-    float d = 0.0f;
-    float[] r = atRow(i);
-    for (int j = 0; j < n; j++) {
-      d += r[j] * vec.at(j);
+    return VectorUtil.dotProduct(atRow(i), 0, vec.toArray(), 0, n);
+  }
+
+  public void addToVector(Vector x, int i, float a) {
+    HotRowsProfile profile = hotRowsProfile;
+    if (profile != null) {
+      profile.record(i);
+    }
+    float[] data = x.toArray();
+    try {
+      in.seek(layout.rowPosition(i));
+      for (int j = 0; j < n; j++) {
+        data[j] += a * in.readFloat();
+      }
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not read row " + i + " from matrix");
     }
-    return d;
   }
 
   public float l2NormRow(int i) {
@@ -83,6 +97,20 @@ public class MMapMatrix implements ReadableMatrix {
     return norms;
   }
 
+  public void warmUp(int[] rows) throws IOException {
+    layout.touchRows(in.clone(), rows);
+  }
+
+  public void setHotRowsProfile(HotRowsProfile profile) {
+    Preconditions.checkArgument(profile == null || profile.m() == m,
+      "Hot rows profile doesn't match the matrix rows");
+    this.hotRowsProfile = profile;
+  }
+
+  public HotRowsProfile getHotRowsProfile() {
+    return hotRowsProfile;
+  }
+
   public int m() { return m; }
 
   public int n() { return n; }
@@ -101,10 +129,17 @@ public class MMapMatrix implements ReadableMatrix {
   }
 
   public static MMapMatrix load(MMapFile mmap) throws IOException {
-    ResourceInput in = mmap.openInput();
+    return load(mmap, mmap.openInput());
+  }
+
+  /**
+   * Loads a matrix from an input positioned on its dimensions, e.g. a little-endian
+   * region of a fastText binary model.
+   */
+  public static MMapMatrix load(MMapFile mmap, ResourceInput in) throws IOException {
     int m = (int) in.readLong();
     int n = (int) in.readLong();
-    return new MMapMatrix(mmap, in, m, n);
+    return new MMapMatrix(mmap, in, MMapMatrixFormat.Layout.contiguous(MatrixEncoding.FLOAT32, m, n, in.getFilePointer()));
   }
 
   @Override
@@ -122,4 +157,8 @@ public class MMapMatrix implements ReadableMatrix {
     throw new UnsupportedOperationException("Not implemented yet");
   }
 
+  public void saveToMMap(OutputStream os, boolean alignRows) throws IOException {
+    throw new UnsupportedOperationException("Not implemented yet");
+  }
+
 }
@@ -0,0 +1,219 @@
+package fasttext.mmap;
+
+import com.google.common.base.Preconditions;
+import fasttext.MatrixEncoding;
+import fasttext.ReadableMatrix;
+import fasttext.store.DataOutput;
+import fasttext.store.MMapFile;
+import fasttext.store.ResourceInput;
+
+import java.io.IOException;
+
+/**
+ * Header of memory-mapped input matrices.
+ *
+ * <p>Float matrices written before version 2 start directly with their dimensions
+ * as two longs, so their first int is always 0, followed by the rows.
+ * Other matrices start with {@link #MAGIC}, followed by the format version,
+ * the encoding and the dimensions.
+ *
+ * <p>From version 2, the header also gives the data offset, the row stride and the row
+ * chunk size, and is padded to {@link #PAGE_SIZE}. Rows may be padded to {@link #ROW_ALIGNMENT}
+ * bytes, and never cross a multiple of the row chunk size, so that they are read from a single
+ * buffer of a {@link MMapFile} mapped from the start of the matrix.
+ */
+public final class MMapMatrixFormat {
+
+  private MMapMatrixFormat() {}
+
+  public static final int MAGIC = 0x46543446;
+  public static final int VERSION = 2;
+
+  /** Header length of version 1: magic, version, encoding, m, n */
+  public static final int HEADER_LENGTH = 3 * Integer.BYTES + 2 * Long.BYTES;
+  /** Header length of version 2: version 1 header, data offset, row stride, row chunk size power */
+  public static final int HEADER_LENGTH_V2 = HEADER_LENGTH + 3 * Integer.BYTES;
+  public static final int PAGE_SIZE = 4096;
+  public static final int ROW_ALIGNMENT = 64;
+  /** Rows never cross multiples of 2^28 bytes, the smallest default {@link MMapFile} chunk size */
+  public static final int ROW_CHUNK_SIZE_POWER = 28;
+
+  /** Position of the rows of a memory-mapped matrix */
+  public static final class Layout {
+
+    private final MatrixEncoding encoding;
+    private final int m;
+    private final int n;
+    private final long dataOffset;
+    private final int rowStride;
+    private final long chunkSize;
+    private final int firstChunkRows;
+    private final int chunkRows;
+    /** Sum of the bytes read by {@link #touchRows(ResourceInput, int[])}, so that reads are not optimized away */
+    private static volatile int touched;
+
+    private Layout(MatrixEncoding encoding, int m, int n, long dataOffset, int rowStride, int chunkSizePower) {
+      this.encoding = encoding;
+      this.m = m;
+      this.n = n;
+      this.dataOffset = dataOffset;
+      this.rowStride = rowStride;
+      if (chunkSizePower > 0 && rowStride > 0) {
+        this.chunkSize = 1L << chunkSizePower;
+        this.firstChunkRows = (int) ((chunkSize - dataOffset) / rowStride);
+        this.chunkRows = (int) (chunkSize / rowStride);
+      } else {
+        this.chunkSize = 0L;
+        this.firstChunkRows = Integer.MAX_VALUE;
+        this.chunkRows = Integer.MAX_VALUE;
+      }
+    }
+
+    /** Layout of rows stored one after the other from the given offset. */
+    static Layout contiguous(MatrixEncoding encoding, int m, int n, long dataOffset) {
+      return new Layout(encoding, m, n, dataOffset, rowLength(encoding, n), 0);
+    }
+
+    public MatrixEncoding encoding() { return encoding; }
+
+    public int m() { return m; }
+
+    public int n() { return n; }
+
+    /** Position of row i from the start of the matrix. */
+    public long rowPosition(int i) {
+      if (i < firstChunkRows) {
+        return dataOffset + (long) i * rowStride;
+      }
+      int j = i - firstChunkRows;
+      return (j / chunkRows + 1L) * chunkSize + (long) (j % chunkRows) * rowStride;
+    }
+
+    /**
+     * Reads one byte of every page of the given rows, each page once when rows are sorted,
+     * so that they are loaded into physical memory like {@link java.nio.MappedByteBuffer#load()}.
+     * @param in an input private to the calling thread, e.g. a clone
+     */
+    void touchRows(ResourceInput in, int[] rows) throws IOException {
+      int rowLength = rowLength(encoding, n);
+      if (rowLength == 0) {
+        return;
+      }
+      long lastPage = -1L;
+      int sum = 0;
+      for (int i : rows) {
+        Preconditions.checkElementIndex(i, m);
+        long start = rowPosition(i);
+        for (long page = start / PAGE_SIZE; page <= (start + rowLength - 1) / PAGE_SIZE; page++) {
+          if (page != lastPage) {
+            in.seek(Math.max(page * PAGE_SIZE, start));
+            sum += in.readByte();
+            lastPage = page;
+          }
+        }
+      }
+      touched = sum;
+    }
+
+    /** Writes the zeros following row i, whose values were just written. */
+    public void writeRowPadding(DataOutput out, int i) throws IOException {
+      long end = i + 1 < m ? rowPosition(i + 1) : rowPosition(i) + rowStride;
+      for (long p = rowPosition(i) + rowLength(encoding, n); p < end; p++) {
+        out.writeByte((byte) 0);
+      }
+    }
+  }
+
+  /** Length in bytes of the values of a row, with its scale for int8 matrices. */
+  static int rowLength(MatrixEncoding encoding, int n) {
+    switch (encoding) {
+      case FLOAT16:
+      case BFLOAT16:
+        return n * Short.BYTES;
+      case INT8:
+        return Float.BYTES + n;
+      default:
+        return n * Float.BYTES;
+    }
+  }
+
+  /**
+   * Writes the header of a matrix, padded to a page. Rows written next must be followed by
+   * {@link Layout#writeRowPadding(DataOutput, int)}.
+   * @param alignRows pad rows to {@link #ROW_ALIGNMENT} bytes
+   */
+  public static Layout writeHeader(DataOutput out, MatrixEncoding encoding, int m, int n, boolean alignRows)
+    throws IOException {
+    int rowLength = rowLength(encoding, n);
+    int rowStride = alignRows ? (rowLength + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT : rowLength;
+    // rows larger than a chunk cannot avoid crossing chunks
+    int chunkSizePower = rowStride <= (1 << ROW_CHUNK_SIZE_POWER) - PAGE_SIZE ? ROW_CHUNK_SIZE_POWER : 0;
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(encoding.getValue());
+    out.writeLong(m);
+    out.writeLong(n);
+    out.writeInt(PAGE_SIZE);
+    out.writeInt(rowStride);
+    out.writeInt(chunkSizePower);
+    for (int i = HEADER_LENGTH_V2; i < PAGE_SIZE; i++) {
+      out.writeByte((byte) 0);
+    }
+    return new Layout(encoding, m, n, PAGE_SIZE, rowStride, chunkSizePower);
+  }
+
+  /**
+   * Reads the layout of a memory-mapped matrix, whatever its version.
+   */
+  public static Layout readLayout(ResourceInput in) throws IOException {
+    in.seek(0L);
+    if (in.length() < HEADER_LENGTH || in.readInt() != MAGIC) {
+      in.seek(0L);
+      int m = (int) in.readLong();
+      int n = (int) in.readLong();
+      return Layout.contiguous(MatrixEncoding.FLOAT32, m, n, 2 * Long.BYTES);
+    }
+    int version = in.readInt();
+    if (version > VERSION) {
+      throw new IllegalArgumentException("Memory-mapped matrix version (" + version +
+        ") doesn't match current version (" + VERSION + ")");
+    }
+    MatrixEncoding encoding = MatrixEncoding.fromValue(in.readInt());
+    int m = (int) in.readLong();
+    int n = (int) in.readLong();
+    if (version < 2) {
+      return Layout.contiguous(encoding, m, n, HEADER_LENGTH);
+    }
+    int dataOffset = in.readInt();
+    int rowStride = in.readInt();
+    int chunkSizePower = in.readInt();
+    return new Layout(encoding, m, n, dataOffset, rowStride, chunkSizePower);
+  }
+
+  /**
+   * Reads the encoding of a memory-mapped matrix.
+   */
+  public static MatrixEncoding readEncoding(ResourceInput in) throws IOException {
+    return readLayout(in).encoding();
+  }
+
+  /** Loads a memory-mapped input matrix, whatever its encoding. */
+  public static ReadableMatrix load(MMapFile mmap) throws IOException {
+    return load(mmap, mmap.openInput());
+  }
+
+  /** Loads a memory-mapped input matrix from an input, e.g. a section of a model file. */
+  public static ReadableMatrix load(MMapFile mmap, ResourceInput in) throws IOException {
+    Layout layout = readLayout(in);
+    switch (layout.encoding()) {
+      case FLOAT16:
+      case BFLOAT16:
+        return new MMapHalfMatrix(mmap, in, layout);
+      case INT8:
+        return new MMapInt8Matrix(mmap, in, layout);
+      default:
+        return new MMapMatrix(mmap, in, layout);
+    }
+  }
+
+}
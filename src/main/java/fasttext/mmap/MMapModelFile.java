@@ -0,0 +1,293 @@
+package fasttext.mmap;
+
+import com.google.common.base.Preconditions;
+import fasttext.store.MMapFile;
+import fasttext.store.ResourceInput;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Single-file memory-mapped model.
+ *
+ * <p>The file starts with {@link #MAGIC}, the format version, the number of sections and
+ * the section table, whose entries give the id, offset, length and CRC32 of each section,
+ * followed by the CRC32 of the header. Sections start on {@link #PAGE_SIZE} boundaries and
+ * hold the same bytes as the files of a memory-mapped model directory.
+ * Each section is mapped from its offset, so that the rows of memory-mapped matrices
+ * are laid out from the start of their mapping, see {@link MMapMatrixFormat}.
+ *
+ * <p>Model files are written to a temporary file moved over the target once complete,
+ * so that a model file may be replaced atomically.
+ */
+public final class MMapModelFile implements Closeable {
+
+  public static final int MAGIC = 0x46544d46;
+  public static final int VERSION = 1;
+  public static final int PAGE_SIZE = 4096;
+
+  /** Header length before the section table: magic, version, number of sections */
+  private static final int HEADER_LENGTH = 3 * Integer.BYTES;
+  /** Section table entry length: id, offset, length, checksum */
+  private static final int SECTION_ENTRY_LENGTH = Integer.BYTES + 3 * Long.BYTES;
+  private static final int CHECKSUM_BUFFER_SIZE = 1 << 16;
+
+  /** Sections of a model file */
+  public enum Section {
+
+    MODEL(0), DICTIONARY(1), INPUT(2), WORD_VECTORS(3), NN_INDEX(4), LABEL_INDEX(5);
+    private final int value;
+
+    Section(int value) {
+      this.value = value;
+    }
+
+    public int getValue() {
+      return value;
+    }
+
+    /** Returns the section with the given id, or {@code null} for sections of later versions. */
+    public static Section fromValue(int value) {
+      for (Section section : values()) {
+        if (section.value == value) {
+          return section;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** Writes the bytes of a section */
+  public interface SectionWriter {
+    void write(OutputStream os) throws IOException;
+  }
+
+  private static final class SectionEntry {
+    private final long offset;
+    private final long length;
+    private final long checksum;
+
+    private SectionEntry(long offset, long length, long checksum) {
+      this.offset = offset;
+      this.length = length;
+      this.checksum = checksum;
+    }
+  }
+
+  private final MMapFile mmapFile;
+  private final ResourceInput in;
+  private final Map<Section, SectionEntry> sections;
+
+  private MMapModelFile(MMapFile mmapFile, ResourceInput in, Map<Section, SectionEntry> sections) {
+    this.mmapFile = mmapFile;
+    this.in = in;
+    this.sections = sections;
+  }
+
+  /** Returns whether a file starts with {@link #MAGIC}. */
+  public static boolean isModelFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+      while (magic.hasRemaining() && channel.read(magic) >= 0) {}
+      return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    }
+  }
+
+  /** Maps a model file and reads its section table. */
+  public static MMapModelFile open(Path path) throws IOException {
+    MMapFile mmapFile = new MMapFile(path);
+    ResourceInput in = mmapFile.openInput();
+    if (in.length() < HEADER_LENGTH || in.readInt() != MAGIC) {
+      in.close();
+      throw new IllegalArgumentException("Invalid model file: " + path);
+    }
+    int version = in.readInt();
+    if (version > VERSION) {
+      in.close();
+      throw new IllegalArgumentException("Model file version (" + version +
+        ") doesn't match current version (" + VERSION + ")");
+    }
+    int count = in.readInt();
+    if (count < 0 || in.length() < HEADER_LENGTH + (long) count * SECTION_ENTRY_LENGTH + Long.BYTES) {
+      in.close();
+      throw new IllegalArgumentException("Invalid model file: " + path);
+    }
+    int headerLength = HEADER_LENGTH + count * SECTION_ENTRY_LENGTH;
+    byte[] header = new byte[headerLength];
+    in.seek(0L);
+    in.readBytes(header, 0, headerLength);
+    CRC32 crc = new CRC32();
+    crc.update(header, 0, headerLength);
+    if (in.readLong() != crc.getValue()) {
+      in.close();
+      throw new IllegalArgumentException("Model file header is corrupted: " + path);
+    }
+    Map<Section, SectionEntry> sections = new EnumMap<>(Section.class);
+    in.seek(HEADER_LENGTH);
+    for (int i = 0; i < count; i++) {
+      Section section = Section.fromValue(in.readInt());
+      SectionEntry entry = new SectionEntry(in.readLong(), in.readLong(), in.readLong());
+      if (entry.offset < 0 || entry.length < 0 || entry.length > in.length() - entry.offset) {
+        in.close();
+        throw new IllegalArgumentException("Model file section " + section + " is out of bounds: " + path);
+      }
+      if (section != null) {
+        sections.put(section, entry);
+      }
+    }
+    return new MMapModelFile(mmapFile, in, sections);
+  }
+
+  /**
+   * Writes a model file with the given sections, in order, to a temporary file which is
+   * then moved to the given path.
+   */
+  public static void write(Path path, Map<Section, SectionWriter> sections) throws IOException {
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    int headerLength = HEADER_LENGTH + sections.size() * SECTION_ENTRY_LENGTH;
+    ByteBuffer header = ByteBuffer.allocate(headerLength + Long.BYTES);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(sections.size());
+    boolean moved = false;
+    try {
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        long offset = align(headerLength + Long.BYTES);
+        for (Map.Entry<Section, SectionWriter> section : sections.entrySet()) {
+          channel.position(offset);
+          SectionOutputStream os = new SectionOutputStream(Channels.newOutputStream(channel));
+          section.getValue().write(os);
+          os.flush();
+          header.putInt(section.getKey().getValue());
+          header.putLong(offset);
+          header.putLong(os.length);
+          header.putLong(os.crc.getValue());
+          offset = align(offset + os.length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, headerLength);
+        header.putLong(crc.getValue());
+        header.flip();
+        long position = 0L;
+        while (header.hasRemaining()) {
+          position += channel.write(header, position);
+        }
+        channel.force(true);
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      moved = true;
+    } finally {
+      if (!moved) {
+        Files.deleteIfExists(tmp);
+      }
+    }
+  }
+
+  private static long align(long offset) {
+    return (offset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+  }
+
+  public boolean hasSection(Section section) {
+    return sections.containsKey(section);
+  }
+
+  private SectionEntry entry(Section section) {
+    SectionEntry entry = sections.get(section);
+    Preconditions.checkArgument(entry != null, "Model file has no " + section + " section");
+    return entry;
+  }
+
+  /** Offset of a section in the model file. */
+  public long sectionOffset(Section section) {
+    return entry(section).offset;
+  }
+
+  /** Maps a section. */
+  public ResourceInput openSection(Section section) throws IOException {
+    SectionEntry entry = entry(section);
+    return mmapFile.openInput(entry.offset, entry.length);
+  }
+
+  /** Checks the CRC32 of every section, reading the whole file. */
+  public void checkIntegrity() throws IOException {
+    byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+    for (Map.Entry<Section, SectionEntry> section : sections.entrySet()) {
+      ResourceInput sectionIn = in.slice(section.getKey().name(), section.getValue().offset, section.getValue().length);
+      CRC32 crc = new CRC32();
+      long remaining = section.getValue().length;
+      while (remaining > 0) {
+        int chunk = (int) Math.min(remaining, buffer.length);
+        sectionIn.readBytes(buffer, 0, chunk);
+        crc.update(buffer, 0, chunk);
+        remaining -= chunk;
+      }
+      if (crc.getValue() != section.getValue().checksum) {
+        throw new IllegalArgumentException("Model file section " + section.getKey() + " is corrupted: " +
+          mmapFile.getPath());
+      }
+    }
+  }
+
+  public MMapFile getMMapFile() {
+    return mmapFile;
+  }
+
+  @Override
+  public String toString() {
+    return "MMapModelFile(path=" + mmapFile.getPath() + ", sections=" + sections.keySet() + ")";
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /** Buffered stream over the model file channel, counting and checksumming a section, left open on close. */
+  private static final class SectionOutputStream extends OutputStream {
+    private final OutputStream os;
+    private final CRC32 crc = new CRC32();
+    private long length = 0L;
+
+    private SectionOutputStream(OutputStream os) {
+      this.os = new BufferedOutputStream(os, CHECKSUM_BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      os.write(b);
+      crc.update(b);
+      length++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      os.write(b, off, len);
+      crc.update(b, off, len);
+      length += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      os.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+}
@@ -2,6 +2,7 @@ package fasttext.mmap;
 
 import com.google.common.base.Preconditions;
 import fasttext.ProductQuantizer;
+import fasttext.QCodeArray;
 import fasttext.QCodes;
 import fasttext.ReadableQMatrix;
 import fasttext.Vector;
@@ -67,8 +68,8 @@ public class MMapQMatrix implements ReadableQMatrix {
 
   }
 
-  private final ProductQuantizer npq;
   private final ProductQuantizer pq;
+  private final float[] norms;
   private boolean qnorm;
   private final int m;
   private final int n;
@@ -76,52 +77,70 @@ public class MMapQMatrix implements ReadableQMatrix {
   private final MMapFile mmapFile;
 
   private MMapQCodes codes;
-  private MMapQCodes normCodes;
 
   private MMapQMatrix(MMapFile mmapFile,
                       boolean qnorm,
                       int m,
                       int n,
                       MMapQCodes codes,
-                      MMapQCodes normCodes,
                       ProductQuantizer pq,
-                      ProductQuantizer npq) {
+                      float[] norms) {
     this.mmapFile = mmapFile;
     this.qnorm = qnorm;
     this.m = m;
     this.n = n;
     this.codes = codes;
-    this.normCodes = normCodes;
     this.pq = pq;
-    this.npq = npq;
+    this.norms = norms;
   }
 
   private int codesByteArrayLength() {
     return codes.size() * Byte.BYTES;
   }
 
-  private int normCodesByteArrayLength() {
-    return m * Byte.BYTES;
-  }
-
   public void addToVector(Vector x, int t) {
-    float norm = 1f;
-    if (qnorm) {
-      int cPosition = npq.getCentroidsPosition(0, normCodes.get(t));
-      norm = npq.getCentroid(cPosition);
-    }
+    float norm = qnorm ? norms[t] : 1f;
     pq.addCode(x, codes, t, norm);
   }
 
   public float dotRow(Vector vec, int i) {
     Preconditions.checkPositionIndex(i, m);
     Preconditions.checkArgument(vec.size() == n);
-    float norm = 1f;
+    float norm = qnorm ? norms[i] : 1f;
+    return pq.mulCode(vec, codes, i, norm);
+  }
+
+  /**
+   * Lookup table of the dot products of vec with the quantizer centroids.
+   * @see #dotRow(float[], int)
+   */
+  public float[] dotTable(Vector vec) {
+    Preconditions.checkArgument(vec.size() == n);
+    return pq.dotTable(vec);
+  }
+
+  /**
+   * Dot product of row i with the vector whose lookup table is given.
+   * @see #dotTable(Vector)
+   */
+  public float dotRow(float[] dotTable, int i) {
+    Preconditions.checkPositionIndex(i, m);
+    float norm = qnorm ? norms[i] : 1f;
+    return pq.mulCode(dotTable, codes, i, norm);
+  }
+
+  /**
+   * L2 norm of row i. With quantized norms, returns the norm decoded at load time,
+   * otherwise the norm of the decoded row.
+   */
+  public float rowNorm(int i) {
+    Preconditions.checkPositionIndex(i, m);
     if (qnorm) {
-      int cPosition = npq.getCentroidsPosition(0, normCodes.get(i));
-      norm = npq.getCentroid(cPosition);
+      return norms[i];
     }
-    return pq.mulCode(vec, codes, i, norm);
+    Vector row = new Vector(n);
+    pq.addCode(row, codes, i, 1f);
+    return row.norm();
   }
 
   public int m() {
@@ -145,12 +164,6 @@ public class MMapQMatrix implements ReadableQMatrix {
     builder.append(codes.toString());
     builder.append(", qnorm=");
     builder.append(qnorm);
-    builder.append(", normCodes=");
-    if (normCodes != null) {
-      builder.append(normCodes.toString());
-    } else {
-      builder.append("null");
-    }
     builder.append(", MMapFile=(");
     builder.append(mmapFile.getPath().toString());
     builder.append("))");
@@ -158,12 +171,16 @@ public class MMapQMatrix implements ReadableQMatrix {
   }
 
   public static MMapQMatrix load(MMapFile mmap) throws IOException {
-    ResourceInput in = mmap.openInput();
+    return load(mmap, mmap.openInput());
+  }
+
+  /** Loads a matrix from an input positioned on its start, e.g. a section of a model file. */
+  public static MMapQMatrix load(MMapFile mmap, ResourceInput in) throws IOException {
     boolean qnorm = in.readBoolean();
     int m = (int) in.readLong();
     int n = (int) in.readLong();
     int codeSize = in.readInt();
-    MMapQCodes codes = new MMapQCodes(in, 21, codeSize);
+    MMapQCodes codes = new MMapQCodes(in, in.getFilePointer(), codeSize);
     in.skipBytes(codeSize);
     // pq
     int dim = in.readInt();
@@ -175,11 +192,11 @@ public class MMapQMatrix implements ReadableQMatrix {
       centroids[i] = in.readFloat();
     }
     ProductQuantizer pq = new ProductQuantizer(dim, nsubq, dsub, lastdsub, centroids);
-    MMapQCodes normCodes = null;
-    ProductQuantizer npq = null;
+    float[] norms = null;
     if (qnorm) {
-      normCodes = new MMapQCodes(in,37 + codeSize + centroids.length * 4, m);
-      in.skipBytes(m);
+      // norms are decoded once, so that scoring does not seek the norm codes
+      byte[] rawNormCodes = new byte[m];
+      in.readBytes(rawNormCodes, 0, m);
       // npq
       int normDim = in.readInt();
       int normNsubq = in.readInt();
@@ -189,26 +206,25 @@ public class MMapQMatrix implements ReadableQMatrix {
       for (int i = 0; i < normCentroids.length; i++) {
         normCentroids[i] = in.readFloat();
       }
-      npq = new ProductQuantizer(normDim, normNsubq, normDsub, normLastdsub, normCentroids);
+      ProductQuantizer npq = new ProductQuantizer(normDim, normNsubq, normDsub, normLastdsub, normCentroids);
+      int[] normCodes = new int[m];
+      for (int i = 0; i < m; i++) {
+        normCodes[i] = rawNormCodes[i] & 0xFF;
+      }
+      norms = npq.decodeNorms(new QCodeArray(normCodes), m);
     }
-    return new MMapQMatrix(mmap, qnorm, m, n, codes, normCodes, pq, npq);
+    return new MMapQMatrix(mmap, qnorm, m, n, codes, pq, norms);
   }
 
   @Override
   public MMapQMatrix clone() throws CloneNotSupportedException {
     MMapQMatrix m = (MMapQMatrix) super.clone();
     m.codes = codes.clone();
-    if (qnorm) {
-      m.normCodes = normCodes.clone();
-    }
     return m;
   }
 
   public void close() throws IOException {
     codes.close();
-    if (qnorm) {
-      normCodes.close();
-    }
   }
 
   public void saveToMMap(OutputStream os) throws IOException {
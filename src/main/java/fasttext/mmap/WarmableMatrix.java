@@ -0,0 +1,28 @@
+package fasttext.mmap;
+
+import fasttext.ReadableMatrix;
+
+import java.io.IOException;
+
+/**
+ * Memory-mapped {@link ReadableMatrix} whose rows can be loaded into physical memory
+ * selectively, instead of preloading the whole file with {@link fasttext.store.MMapFile#setPreload(boolean)}.
+ */
+public interface WarmableMatrix extends ReadableMatrix {
+
+  /**
+   * Touches every page of the given rows so that the operating system reads them in,
+   * e.g. the rows of the most frequent words. The behavior is best-effort, pages may
+   * be evicted later under memory pressure.
+   */
+  void warmUp(int[] rows) throws IOException;
+
+  /**
+   * Records the rows added to vectors in the given profile, or stops recording if {@code null}.
+   * Clones made afterwards record in the same profile.
+   */
+  void setHotRowsProfile(HotRowsProfile profile);
+
+  HotRowsProfile getHotRowsProfile();
+
+}
@@ -4,6 +4,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Base ResourceInput implementation that uses an array
@@ -95,7 +96,7 @@ abstract class ByteBufferResourceInput extends ResourceInput implements RandomAc
     try {
       return curBuf.getShort();
     } catch (BufferUnderflowException e) {
-      return super.readShort();
+      return (short) readStraddling(Short.BYTES);
     } catch (NullPointerException npe) {
       throw new AlreadyClosedException("Already closed: " + this);
     }
@@ -106,7 +107,7 @@ abstract class ByteBufferResourceInput extends ResourceInput implements RandomAc
     try {
       return curBuf.getInt();
     } catch (BufferUnderflowException e) {
-      return super.readInt();
+      return (int) readStraddling(Integer.BYTES);
     } catch (NullPointerException npe) {
       throw new AlreadyClosedException("Already closed: " + this);
     }
@@ -117,12 +118,29 @@ abstract class ByteBufferResourceInput extends ResourceInput implements RandomAc
     try {
       return curBuf.getLong();
     } catch (BufferUnderflowException e) {
-      return super.readLong();
+      return readStraddling(Long.BYTES);
     } catch (NullPointerException npe) {
       throw new AlreadyClosedException("Already closed: " + this);
     }
   }
 
+  /**
+   * Reads a value straddling two buffers byte by byte, in the byte order of the buffers.
+   */
+  private long readStraddling(int bytes) throws IOException {
+    long v = 0L;
+    if (curBuf.order() == ByteOrder.BIG_ENDIAN) {
+      for (int i = 0; i < bytes; i++) {
+        v = (v << 8) | (readByte() & 0xFFL);
+      }
+    } else {
+      for (int i = 0; i < bytes; i++) {
+        v |= (readByte() & 0xFFL) << (i << 3);
+      }
+    }
+    return v;
+  }
+
   @Override
   public long getFilePointer() {
     try {
@@ -271,7 +289,7 @@ abstract class ByteBufferResourceInput extends ResourceInput implements RandomAc
   protected ByteBufferResourceInput newCloneInstance(String newResourceDescription, ByteBuffer[] newBuffers, int offset, long length) {
     if (newBuffers.length == 1) {
       newBuffers[0].position(offset);
-      return new SingleBufferImpl(newResourceDescription, newBuffers[0].slice(), length, chunkSizePower);
+      return new SingleBufferImpl(newResourceDescription, newBuffers[0].slice().order(newBuffers[0].order()), length, chunkSizePower);
     } else {
       return new MultiBufferImpl(newResourceDescription, newBuffers, offset, length, chunkSizePower);
     }
@@ -290,7 +308,8 @@ abstract class ByteBufferResourceInput extends ResourceInput implements RandomAc
     final ByteBuffer slices[] = new ByteBuffer[endIndex - startIndex + 1];
 
     for (int i = 0; i < slices.length; i++) {
-      slices[i] = buffers[startIndex + i].duplicate();
+      // duplicates are big-endian, keep the byte order of the input
+      slices[i] = buffers[startIndex + i].duplicate().order(buffers[startIndex + i].order());
     }
 
     // set the last buffer's limit for the sliced view.
@@ -0,0 +1,193 @@
+package fasttext.store;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Implementation class for buffered {@link FastTextInput} that reads from a {@link FileChannel}.
+ *
+ * <p>Reads are positional, so several inputs may read the same channel concurrently.
+ * Floats are bulk-converted from the little-endian buffer.
+ */
+public class ChannelFastTextInput extends FastTextInput implements Closeable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final boolean closeChannel;
+  private final ByteBuffer buffer;
+  /** Channel position of the end of the buffered bytes */
+  private long position;
+
+  /**
+   * Reads the channel from the given position, without closing it.
+   */
+  public ChannelFastTextInput(FileChannel channel, long position, int bufferSize) {
+    this(channel, position, bufferSize, false);
+  }
+
+  private ChannelFastTextInput(FileChannel channel, long position, int bufferSize, boolean closeChannel) {
+    this.channel = channel;
+    this.closeChannel = closeChannel;
+    this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    this.buffer.limit(0);
+    this.position = position;
+  }
+
+  /** Opens a file, which is closed with this input. */
+  public static ChannelFastTextInput open(Path path) throws IOException {
+    return new ChannelFastTextInput(FileChannel.open(path, StandardOpenOption.READ), 0L, DEFAULT_BUFFER_SIZE, true);
+  }
+
+  /** Position of the next byte to read. */
+  public long getFilePointer() {
+    return position - buffer.remaining();
+  }
+
+  /** Moves to the given position. */
+  public void seek(long pos) {
+    long bufferStart = position - buffer.limit();
+    if (pos >= bufferStart && pos <= position) {
+      buffer.position((int) (pos - bufferStart));
+    } else {
+      buffer.limit(0);
+      position = pos;
+    }
+  }
+
+  @Override
+  public void skipBytes(long numBytes) throws IOException {
+    if (numBytes < 0) {
+      throw new IllegalArgumentException("numBytes must be >= 0, got " + numBytes);
+    }
+    seek(getFilePointer() + numBytes);
+  }
+
+  /** Makes sure the buffer holds at least n bytes, n being at most the buffer capacity. */
+  private void require(int n) throws IOException {
+    if (buffer.remaining() >= n) {
+      return;
+    }
+    buffer.compact();
+    while (buffer.position() < n) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        buffer.flip();
+        throw new EOFException("read past EOF: " + channel);
+      }
+      position += read;
+    }
+    buffer.flip();
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    require(Byte.BYTES);
+    return buffer.get();
+  }
+
+  @Override
+  public void readBytes(byte[] b, int offset, int len) throws IOException {
+    while (len > 0) {
+      require(1);
+      int chunk = Math.min(len, buffer.remaining());
+      buffer.get(b, offset, chunk);
+      offset += chunk;
+      len -= chunk;
+    }
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    require(Integer.BYTES);
+    return buffer.getInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    require(Long.BYTES);
+    return buffer.getLong();
+  }
+
+  @Override
+  public void readFloats(float[] dst, int offset, int len) throws IOException {
+    while (len > 0) {
+      require(Float.BYTES);
+      int chunk = Math.min(len, buffer.remaining() / Float.BYTES);
+      buffer.asFloatBuffer().get(dst, offset, chunk);
+      buffer.position(buffer.position() + chunk * Float.BYTES);
+      offset += chunk;
+      len -= chunk;
+    }
+  }
+
+  /**
+   * Reads a string, scanning the buffer for its end. Strings within the buffer are decoded
+   * in place, longer ones are gathered first.
+   */
+  @Override
+  public String readString() throws IOException {
+    require(1);
+    int end = indexOfStringDelimiter();
+    if (end >= 0) {
+      String s = new String(buffer.array(), buffer.position(), end - buffer.position(), StandardCharsets.UTF_8);
+      buffer.position(end + 1);
+      return s;
+    }
+    byte[] barr = new byte[2 * buffer.remaining()];
+    int length = 0;
+    do {
+      int chunk = (end >= 0 ? end : buffer.limit()) - buffer.position();
+      if (length + chunk > barr.length) {
+        barr = Arrays.copyOf(barr, Math.max(2 * barr.length, length + chunk));
+      }
+      buffer.get(barr, length, chunk);
+      length += chunk;
+      if (end >= 0) {
+        buffer.get();
+        return new String(barr, 0, length, StandardCharsets.UTF_8);
+      }
+      require(1);
+      end = indexOfStringDelimiter();
+    } while (true);
+  }
+
+  @Override
+  public void skipString() throws IOException {
+    require(1);
+    int end = indexOfStringDelimiter();
+    while (end < 0) {
+      buffer.position(buffer.limit());
+      require(1);
+      end = indexOfStringDelimiter();
+    }
+    buffer.position(end + 1);
+  }
+
+  /** Index in the buffer of the first string delimiter after its position, or -1 */
+  private int indexOfStringDelimiter() {
+    byte[] array = buffer.array();
+    for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+      if (isStringDelimiter(array[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closeChannel) {
+      channel.close();
+    }
+  }
+
+}
@@ -1,11 +1,19 @@
 package fasttext.store;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /** Extension of {@link DataInput} following fastText models input reads. */
 public abstract class FastTextInput extends DataInput {
 
+  /** Number of floats converted at a time by {@link #readFloats(float[], int, int)} */
+  private static final int FLOATS_BUFFER_SIZE = 8192;
+  /** Initial size of the bytes buffer of {@link #readString()} */
+  private static final int STRING_BUFFER_SIZE = 64;
+
   /**
    * Reads two bytes and returns a short.
    * @see FastTextOutput#writeByte(byte)
@@ -38,30 +46,54 @@ public abstract class FastTextInput extends DataInput {
   }
 
   /**
-   * Reads a string.
+   * Reads len floats written with low-order first into dst, starting at offset.
+   * @see FastTextOutput#writeFloat(float)
+   */
+  public void readFloats(float[] dst, int offset, int len) throws IOException {
+    byte[] bytes = new byte[Math.min(len, FLOATS_BUFFER_SIZE) * Float.BYTES];
+    while (len > 0) {
+      int chunk = Math.min(len, FLOATS_BUFFER_SIZE);
+      readBytes(bytes, 0, chunk * Float.BYTES);
+      ByteBuffer.wrap(bytes, 0, chunk * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+        .asFloatBuffer().get(dst, offset, chunk);
+      offset += chunk;
+      len -= chunk;
+    }
+  }
+
+  /**
+   * Reads a string, ended by an ascii space, \n or \0. Its bytes are decoded as UTF-8 at once.
    * @see FastTextOutput#writeString(String)
    */
   @Override
   public String readString() throws IOException {
+    byte[] barr = new byte[STRING_BUFFER_SIZE];
+    int length = 0;
     int b = readByteAsInt();
-    if (b < 0) {
-      return null;
+    while (!isStringDelimiter(b)) {
+      if (length == barr.length) {
+        barr = Arrays.copyOf(barr, barr.length * 2);
+      }
+      barr[length++] = (byte) b;
+      b = readByteAsInt();
     }
-    int i = -1;
-    StringBuilder sb = new StringBuilder();
-    int barrSize = 128;
-    byte[] barr = new byte[barrSize];
-    // ascii space, \n, \0
-    while (b > -1 && b != 32 && b != 10 && b != 0) {
-      barr[++i] = (byte) b;
+    return new String(barr, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Skips a string, without decoding it.
+   * @see #readString()
+   */
+  public void skipString() throws IOException {
+    int b = readByteAsInt();
+    while (!isStringDelimiter(b)) {
       b = readByteAsInt();
-      if (i == barrSize - 1) {
-        sb.append(new String(barr));
-        i = -1;
-      }
     }
-    sb.append(new String(barr, 0, i + 1, StandardCharsets.UTF_8));
-    return sb.toString();
+  }
+
+  /** Returns whether a byte ends a string: ascii space, \n or \0 */
+  protected static boolean isStringDelimiter(int b) {
+    return b == 32 || b == 10 || b == 0;
   }
 
 }
@@ -2,6 +2,7 @@ package fasttext.store;
 
 import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -25,7 +26,14 @@ public class InputStreamFastTextInput extends FastTextInput implements Closeable
 
   @Override
   public void readBytes(byte[] b, int offset, int len) throws IOException {
-    is.read(b, offset, len);
+    while (len > 0) {
+      int read = is.read(b, offset, len);
+      if (read < 0) {
+        throw new EOFException("read past EOF");
+      }
+      offset += read;
+      len -= read;
+    }
   }
 
   @Override
@@ -5,6 +5,7 @@ import fasttext.store.util.Constants;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
@@ -24,6 +25,10 @@ import java.util.Locale;
  * If you get an OutOfMemoryException, it is recommended
  * to reduce the chunk size, until it works.
  *
+ * <p>On Java 22 and above, files are mapped as a single memory segment instead of
+ * chunks, unmapped as soon as the input is closed, unless the
+ * {@code fasttext.mmap.memorySegments} system property is set to {@code false}.
+ *
  * <p> Inspired by Lucene's MMapDirectory.
  */
 public class MMapFile {
@@ -87,12 +92,54 @@ public class MMapFile {
 
   /** Creates an IndexInput for the file with the given name. */
   public ResourceInput openInput() throws IOException {
+    return openInput(ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * Creates an IndexInput for the file, reading multi-byte values with the given byte order,
+   * e.g. {@link ByteOrder#LITTLE_ENDIAN} for fastText binary models.
+   */
+  public ResourceInput openInput(ByteOrder order) throws IOException {
     try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ)) {
       final String resourceDescription = "MMapIndexInput(path=\"" + path.toString() + "\")";
-      return ByteBufferResourceInput.newInstance(resourceDescription,
-        map(resourceDescription, c, 0, c.size()),
-        c.size(), chunkSizePower);
+      return openInput(resourceDescription, c, 0, c.size(), order);
+    }
+  }
+
+  /**
+   * Creates an IndexInput for a region of the file, e.g. a section of a model file.
+   * The region is mapped from its offset, so that its chunks start at the region start.
+   */
+  public ResourceInput openInput(long offset, long length) throws IOException {
+    return openInput(offset, length, ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * Creates an IndexInput for a region of the file, reading multi-byte values with the given byte order.
+   * @see #openInput(long, long)
+   */
+  public ResourceInput openInput(long offset, long length, ByteOrder order) throws IOException {
+    try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ)) {
+      final String resourceDescription = "MMapIndexInput(path=\"" + path.toString() + "\", offset=" + offset + ")";
+      return openInput(resourceDescription, c, offset, length, order);
+    }
+  }
+
+  /**
+   * Maps a region of the channel as a single memory segment when the foreign memory API is
+   * available, see {@link MMapInputProvider}, or as chunks of byte buffers otherwise.
+   */
+  private ResourceInput openInput(String resourceDescription, FileChannel c, long offset, long length,
+                                  ByteOrder order) throws IOException {
+    MMapInputSupport support = MMapInputProvider.getMMapInputSupport();
+    if (support != null) {
+      return support.openInput(resourceDescription, c, offset, length, order, preload);
+    }
+    ByteBuffer[] buffers = map(resourceDescription, c, offset, length);
+    for (ByteBuffer buffer : buffers) {
+      buffer.order(order);
     }
+    return ByteBufferResourceInput.newInstance(resourceDescription, buffers, length, chunkSizePower);
   }
 
   /** Maps a file into a set of buffers */
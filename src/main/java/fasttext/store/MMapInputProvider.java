@@ -0,0 +1,56 @@
+package fasttext.store;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Selects the {@link MMapInputSupport} implementation at runtime.
+ *
+ * <p>On Java 22 and above, the multi-release jar contains an implementation based on
+ * the foreign memory API, which maps a file as a single {@code MemorySegment} unmapped
+ * when the input is closed. Otherwise, or when the {@code fasttext.mmap.memorySegments}
+ * system property is set to {@code false}, {@link MMapFile} maps {@link java.nio.MappedByteBuffer}
+ * chunks, unmapped by the garbage collector.
+ */
+final class MMapInputProvider {
+
+  private static final Logger logger = Logger.getLogger(MMapInputProvider.class.getName());
+
+  static final String MEMORY_SEGMENTS_PROPERTY = "fasttext.mmap.memorySegments";
+
+  private static final String MEMORY_SEGMENT_SUPPORT_CLASS = "fasttext.store.MemorySegmentMMapInputSupport";
+
+  private static final MMapInputSupport INSTANCE = lookup();
+
+  private MMapInputProvider() {}
+
+  /** Returns the foreign memory implementation, or {@code null} to map byte buffers. */
+  static MMapInputSupport getMMapInputSupport() {
+    return INSTANCE;
+  }
+
+  private static MMapInputSupport lookup() {
+    if (!Boolean.parseBoolean(System.getProperty(MEMORY_SEGMENTS_PROPERTY, "true"))) {
+      logger.debug("Memory segments disabled by system property " + MEMORY_SEGMENTS_PROPERTY);
+      return null;
+    }
+    try {
+      Class.forName("java.lang.foreign.Arena");
+    } catch (ClassNotFoundException | LinkageError e) {
+      logger.debug("Foreign memory API not available, mapping byte buffers");
+      return null;
+    }
+    try {
+      MMapInputSupport support = (MMapInputSupport) Class.forName(MEMORY_SEGMENT_SUPPORT_CLASS)
+        .getDeclaredConstructor().newInstance();
+      logger.info("Using foreign memory API implementation: " + support);
+      return support;
+    } catch (ClassNotFoundException e) {
+      logger.debug("Foreign memory API implementation not packaged, mapping byte buffers");
+      return null;
+    } catch (Throwable t) {
+      logger.warn("Could not load foreign memory API implementation, mapping byte buffers", t);
+      return null;
+    }
+  }
+
+}
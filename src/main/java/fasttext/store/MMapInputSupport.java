@@ -0,0 +1,21 @@
+package fasttext.store;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps a region of a file into a {@link ResourceInput}, as an alternative
+ * to the {@link java.nio.MappedByteBuffer} chunks of {@link MMapFile}.
+ * @see MMapInputProvider
+ */
+interface MMapInputSupport {
+
+  /**
+   * Maps length bytes of the channel from offset, reading multi-byte values with the given byte order.
+   * @param preload ask mapped pages to be loaded into physical memory
+   */
+  ResourceInput openInput(String resourceDescription, FileChannel channel, long offset, long length,
+                          ByteOrder order, boolean preload) throws IOException;
+
+}
@@ -0,0 +1,182 @@
+package fasttext.store;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Implementation class for {@link FastTextInput} that reads an {@link InputStream} ahead on a background thread.
+ *
+ * <p>The reader thread fills a ring of large buffers, e.g. inflating a {@link java.util.zip.GZIPInputStream},
+ * while the parsing thread consumes them. Floats are bulk-converted from the little-endian buffers.
+ */
+public class PipelinedFastTextInput extends FastTextInput implements Closeable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+  public static final int DEFAULT_BUFFERS = 4;
+
+  /** Marks the end of the stream in the filled buffers queue */
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private final InputStream in;
+  private final BlockingQueue<ByteBuffer> free;
+  private final BlockingQueue<ByteBuffer> filled;
+  private final Thread reader;
+  private volatile Throwable failure;
+  private volatile boolean closed;
+  private ByteBuffer buffer = END;
+  private boolean eof;
+
+  public PipelinedFastTextInput(InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+  }
+
+  /**
+   * @param bufferSize size of each buffer in bytes
+   * @param buffers number of buffers in the ring, at least 2 so that reading overlaps parsing
+   */
+  public PipelinedFastTextInput(InputStream in, int bufferSize, int buffers) {
+    Preconditions.checkArgument(bufferSize >= Long.BYTES, "bufferSize must be at least " + Long.BYTES);
+    Preconditions.checkArgument(buffers >= 2, "buffers must be at least 2");
+    this.in = in;
+    this.free = new ArrayBlockingQueue<>(buffers);
+    // one more slot for the end marker
+    this.filled = new ArrayBlockingQueue<>(buffers + 1);
+    for (int i = 0; i < buffers; i++) {
+      free.add(ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+    }
+    this.reader = new Thread(this::fill, "fasttext-input-reader");
+    this.reader.setDaemon(true);
+    this.reader.start();
+  }
+
+  /** Reader thread loop: fills free buffers until the end of the stream, a failure or close. */
+  private void fill() {
+    try {
+      int read = 0;
+      while (!closed && read >= 0) {
+        ByteBuffer b = free.take();
+        byte[] array = b.array();
+        int n = 0;
+        while (n < array.length && !closed && (read = in.read(array, n, array.length - n)) >= 0) {
+          n += read;
+        }
+        b.clear();
+        b.limit(n);
+        if (n > 0) {
+          filled.put(b);
+        }
+      }
+    } catch (InterruptedException ex) {
+      // closed
+    } catch (Throwable t) {
+      failure = t;
+    } finally {
+      // never blocks: there are fewer buffers than slots
+      filled.offer(END);
+    }
+  }
+
+  /** Moves to the next filled buffer, returning false at the end of the stream. */
+  private boolean next() throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (buffer != END) {
+      free.add(buffer);
+    }
+    try {
+      buffer = filled.take();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading " + in);
+    }
+    if (buffer == END) {
+      eof = true;
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure != null) {
+        throw new IOException("Could not read " + in, failure);
+      }
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    if (!buffer.hasRemaining() && !next()) {
+      throw new EOFException("read past EOF: " + in);
+    }
+    return buffer.get();
+  }
+
+  @Override
+  public void readBytes(byte[] b, int offset, int len) throws IOException {
+    while (len > 0) {
+      if (!buffer.hasRemaining() && !next()) {
+        throw new EOFException("read past EOF: " + in);
+      }
+      int chunk = Math.min(len, buffer.remaining());
+      buffer.get(b, offset, chunk);
+      offset += chunk;
+      len -= chunk;
+    }
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    return buffer.remaining() >= Integer.BYTES ? buffer.getInt() : super.readInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return buffer.remaining() >= Long.BYTES ? buffer.getLong() : super.readLong();
+  }
+
+  @Override
+  public void readFloats(float[] dst, int offset, int len) throws IOException {
+    while (len > 0) {
+      if (buffer.remaining() < Float.BYTES) {
+        // float split between two buffers
+        dst[offset++] = Float.intBitsToFloat(super.readInt());
+        len--;
+        continue;
+      }
+      int chunk = Math.min(len, buffer.remaining() / Float.BYTES);
+      buffer.asFloatBuffer().get(dst, offset, chunk);
+      buffer.position(buffer.position() + chunk * Float.BYTES);
+      offset += chunk;
+      len -= chunk;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // the reader may be inside in.read(), which must not run concurrently with in.close()
+    closed = true;
+    reader.interrupt();
+    boolean interrupted = false;
+    while (reader.isAlive()) {
+      try {
+        reader.join();
+      } catch (InterruptedException ex) {
+        // the reader stops after its current read at most
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    in.close();
+  }
+
+}
@@ -31,5 +31,12 @@ public interface RandomAccessInput {
    * @see DataInput#readLong
    */
   long readLong(long pos) throws IOException;
+  /**
+   * Reads a float at the given position in the file
+   * @see DataInput#readFloat
+   */
+  default float readFloat(long pos) throws IOException {
+    return Float.intBitsToFloat(readInt(pos));
+  }
 }
 
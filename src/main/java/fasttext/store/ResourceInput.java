@@ -56,6 +56,16 @@ public abstract class ResourceInput extends DataInput implements Cloneable,Close
   /** The number of bytes in the file. */
   public abstract long length();
 
+  /**
+   * Reads len floats into dst, starting at offset.
+   * @see #readFloat()
+   */
+  public void readFloats(float[] dst, int offset, int len) throws IOException {
+    for (int i = 0; i < len; i++) {
+      dst[offset + i] = readFloat();
+    }
+  }
+
   @Override
   public String toString() {
     return resourceDescription;
@@ -0,0 +1,24 @@
+package fasttext.util;
+
+/** Scalar {@link VectorUtilSupport}, used when the vector API is not available. */
+final class DefaultVectorUtilSupport implements VectorUtilSupport {
+
+  DefaultVectorUtilSupport() {}
+
+  @Override
+  public float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length) {
+    float res = 0.0f;
+    for (int i = 0; i < length; i++) {
+      res += a[aOffset + i] * b[bOffset + i];
+    }
+    return res;
+  }
+
+  @Override
+  public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      y[yOffset + i] += alpha * x[xOffset + i];
+    }
+  }
+
+}
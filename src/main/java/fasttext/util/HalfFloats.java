@@ -0,0 +1,95 @@
+package fasttext.util;
+
+/**
+ * Conversions between 32 bits floats and 16 bits floats stored as shorts.
+ *
+ * <p>Two half precision formats are supported: IEEE 754 binary16 (float16),
+ * which keeps 10 bits of mantissa with a reduced exponent range,
+ * and bfloat16, which keeps the float exponent range with 7 bits of mantissa.
+ * Narrowing conversions round to nearest even.
+ */
+public final class HalfFloats {
+
+  private HalfFloats() {}
+
+  /** float16 to float lookup table, widening is on the hot path of half matrices */
+  private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+  static {
+    for (int i = 0; i < HALF_TO_FLOAT.length; i++) {
+      HALF_TO_FLOAT[i] = computeHalfToFloat((short) i);
+    }
+  }
+
+  /** Converts a float to a float16. */
+  public static short floatToHalf(float f) {
+    int bits = Float.floatToIntBits(f);
+    int sign = (bits >>> 16) & 0x8000;
+    int val = bits & 0x7fffffff;
+    if (val >= 0x7f800000) {
+      // infinity or NaN
+      return (short) (sign | 0x7c00 | (val > 0x7f800000 ? 0x0200 : 0));
+    }
+    if (val >= 0x477ff000) {
+      // rounds to infinity (>= 65520)
+      return (short) (sign | 0x7c00);
+    }
+    if (val < 0x38800000) {
+      // subnormal float16 (< 2^-14)
+      if (val < 0x33000000) {
+        return (short) sign;
+      }
+      int exp = val >>> 23;
+      int mant = (val & 0x7fffff) | 0x800000;
+      int shift = 126 - exp;
+      int h = mant >>> shift;
+      int rem = mant & ((1 << shift) - 1);
+      int half = 1 << (shift - 1);
+      if (rem > half || (rem == half && (h & 1) != 0)) {
+        h++;
+      }
+      return (short) (sign | h);
+    }
+    int h = (((val >>> 23) - 112) << 10) | ((val & 0x7fffff) >>> 13);
+    int rem = val & 0x1fff;
+    if (rem > 0x1000 || (rem == 0x1000 && (h & 1) != 0)) {
+      h++;
+    }
+    return (short) (sign | h);
+  }
+
+  /** Converts a float16 to a float. */
+  public static float halfToFloat(short h) {
+    return HALF_TO_FLOAT[h & 0xffff];
+  }
+
+  private static float computeHalfToFloat(short h) {
+    int sign = (h & 0x8000) << 16;
+    int exp = (h >>> 10) & 0x1f;
+    int mant = h & 0x3ff;
+    if (exp == 0x1f) {
+      return Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+    }
+    if (exp == 0) {
+      float v = Math.scalb((float) mant, -24);
+      return sign == 0 ? v : -v;
+    }
+    return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+  }
+
+  /** Converts a float to a bfloat16. */
+  public static short floatToBFloat16(float f) {
+    int bits = Float.floatToIntBits(f);
+    if ((bits & 0x7fffffff) > 0x7f800000) {
+      // keep NaN a NaN once truncated
+      return (short) ((bits >>> 16) | 0x0040);
+    }
+    return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+  }
+
+  /** Converts a bfloat16 to a float. */
+  public static float bfloat16ToFloat(short h) {
+    return Float.intBitsToFloat((h & 0xffff) << 16);
+  }
+
+}
@@ -0,0 +1,31 @@
+package fasttext.util;
+
+/**
+ * Float vector kernels, vectorized with the JDK vector API when available.
+ * @see VectorizationProvider
+ */
+public final class VectorUtil {
+
+  private static final VectorUtilSupport IMPL = VectorizationProvider.getVectorUtilSupport();
+
+  private VectorUtil() {}
+
+  /** Returns the dot product of {@code a[aOffset, aOffset + length)} and {@code b[bOffset, bOffset + length)}. */
+  public static float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length) {
+    return IMPL.dotProduct(a, aOffset, b, bOffset, length);
+  }
+
+  /** Returns the dot product of a and b. */
+  public static float dotProduct(float[] a, float[] b) {
+    if (a.length != b.length) {
+      throw new IllegalArgumentException("Vector dimensions differ: " + a.length + " != " + b.length);
+    }
+    return IMPL.dotProduct(a, 0, b, 0, a.length);
+  }
+
+  /** Adds {@code alpha * x[xOffset, xOffset + length)} to {@code y[yOffset, yOffset + length)}. */
+  public static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+    IMPL.axpy(alpha, x, xOffset, y, yOffset, length);
+  }
+
+}
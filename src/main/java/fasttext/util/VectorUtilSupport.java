@@ -0,0 +1,15 @@
+package fasttext.util;
+
+/**
+ * Float kernels used on the hot paths of matrices and product quantizers.
+ * @see VectorUtil
+ */
+public interface VectorUtilSupport {
+
+  /** Returns the dot product of {@code a[aOffset, aOffset + length)} and {@code b[bOffset, bOffset + length)}. */
+  float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+  /** Adds {@code alpha * x[xOffset, xOffset + length)} to {@code y[yOffset, yOffset + length)}. */
+  void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+}
@@ -0,0 +1,53 @@
+package fasttext.util;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Selects the {@link VectorUtilSupport} implementation at runtime.
+ *
+ * <p>On Java 16 and above, the multi-release jar contains an implementation
+ * based on the incubating vector API. It is used when the
+ * {@code jdk.incubator.vector} module is enabled, i.e. when the JVM is started
+ * with {@code --add-modules jdk.incubator.vector}. Otherwise, or when the
+ * {@code fasttext.vectorization} system property is set to {@code false},
+ * the scalar implementation is used.
+ */
+public final class VectorizationProvider {
+
+  private static final Logger logger = Logger.getLogger(VectorizationProvider.class.getName());
+
+  public static final String VECTORIZATION_PROPERTY = "fasttext.vectorization";
+
+  private static final String PANAMA_SUPPORT_CLASS = "fasttext.util.PanamaVectorUtilSupport";
+
+  private static final VectorUtilSupport INSTANCE = lookup();
+
+  private VectorizationProvider() {}
+
+  public static VectorUtilSupport getVectorUtilSupport() {
+    return INSTANCE;
+  }
+
+  private static VectorUtilSupport lookup() {
+    if (!Boolean.parseBoolean(System.getProperty(VECTORIZATION_PROPERTY, "true"))) {
+      logger.debug("Vectorization disabled by system property " + VECTORIZATION_PROPERTY);
+      return new DefaultVectorUtilSupport();
+    }
+    try {
+      Class.forName("jdk.incubator.vector.FloatVector");
+    } catch (ClassNotFoundException | LinkageError e) {
+      logger.debug("Vector API not available, using scalar implementation");
+      return new DefaultVectorUtilSupport();
+    }
+    try {
+      VectorUtilSupport support = (VectorUtilSupport) Class.forName(PANAMA_SUPPORT_CLASS)
+        .getDeclaredConstructor().newInstance();
+      logger.info("Using vector API implementation: " + support);
+      return support;
+    } catch (Throwable t) {
+      logger.warn("Could not load vector API implementation, using scalar implementation", t);
+      return new DefaultVectorUtilSupport();
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package fasttext.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorUtilSupport} based on the incubating vector API.
+ * Loops shorter than the preferred species length, such as
+ * product quantizer sub-vectors, run scalar.
+ */
+final class PanamaVectorUtilSupport implements VectorUtilSupport {
+
+  private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+  PanamaVectorUtilSupport() {}
+
+  @Override
+  public float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length) {
+    int i = 0;
+    float res = 0.0f;
+    if (length >= SPECIES.length()) {
+      int bound = SPECIES.loopBound(length);
+      FloatVector acc = FloatVector.zero(SPECIES);
+      for (; i < bound; i += SPECIES.length()) {
+        FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+        FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+        acc = va.fma(vb, acc);
+      }
+      res = acc.reduceLanes(VectorOperators.ADD);
+    }
+    for (; i < length; i++) {
+      res += a[aOffset + i] * b[bOffset + i];
+    }
+    return res;
+  }
+
+  @Override
+  public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+    int i = 0;
+    if (length >= SPECIES.length()) {
+      int bound = SPECIES.loopBound(length);
+      FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+      for (; i < bound; i += SPECIES.length()) {
+        FloatVector vx = FloatVector.fromArray(SPECIES, x, xOffset + i);
+        FloatVector vy = FloatVector.fromArray(SPECIES, y, yOffset + i);
+        vx.fma(va, vy).intoArray(y, yOffset + i);
+      }
+    }
+    for (; i < length; i++) {
+      y[yOffset + i] += alpha * x[xOffset + i];
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PanamaVectorUtilSupport(species=" + SPECIES + ")";
+  }
+
+}
@@ -0,0 +1,39 @@
+package fasttext.store;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link MMapInputSupport} based on the foreign memory API. Each input maps its whole
+ * region as one {@link MemorySegment} in a shared {@link Arena}, so that clones may be
+ * read from other threads, and unmaps it deterministically when closed.
+ */
+final class MemorySegmentMMapInputSupport implements MMapInputSupport {
+
+  MemorySegmentMMapInputSupport() {}
+
+  @Override
+  public ResourceInput openInput(String resourceDescription, FileChannel channel, long offset, long length,
+                                 ByteOrder order, boolean preload) throws IOException {
+    final Arena arena = Arena.ofShared();
+    try {
+      final MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, offset, length, arena);
+      if (preload) {
+        segment.load();
+      }
+      return new MemorySegmentResourceInput(resourceDescription, arena, segment, order);
+    } catch (IOException | RuntimeException e) {
+      arena.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MemorySegmentMMapInputSupport";
+  }
+
+}
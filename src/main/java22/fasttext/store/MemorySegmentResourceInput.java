@@ -0,0 +1,253 @@
+package fasttext.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * {@link ResourceInput} over a file region mapped as a single {@link MemorySegment}.
+ *
+ * <p>Every read is bounds-checked by the segment, so that there is no chunk boundary to handle:
+ * reads past the end throw {@link EOFException}. The original input owns the shared {@link Arena}
+ * of the mapping and unmaps it when closed, its clones and slices then throw
+ * {@link AlreadyClosedException}.
+ */
+final class MemorySegmentResourceInput extends ResourceInput implements RandomAccessInput {
+
+  private final Arena arena;
+  private final MemorySegment segment;
+  private final long length;
+  private final ByteOrder order;
+  private final ValueLayout.OfShort shortLayout;
+  private final ValueLayout.OfInt intLayout;
+  private final ValueLayout.OfLong longLayout;
+  private final ValueLayout.OfFloat floatLayout;
+
+  private long pos = 0L;
+  private boolean isClone = false;
+
+  MemorySegmentResourceInput(String resourceDescription, Arena arena, MemorySegment segment, ByteOrder order) {
+    super(resourceDescription);
+    this.arena = arena;
+    this.segment = segment;
+    this.length = segment.byteSize();
+    this.order = order;
+    this.shortLayout = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(order);
+    this.intLayout = ValueLayout.JAVA_INT_UNALIGNED.withOrder(order);
+    this.longLayout = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(order);
+    this.floatLayout = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(order);
+  }
+
+  private void ensureOpen() {
+    if (!segment.scope().isAlive()) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
+  private AlreadyClosedException alreadyClosed(IllegalStateException e) {
+    return new AlreadyClosedException("Already closed: " + this, e);
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    try {
+      final byte b = segment.get(ValueLayout.JAVA_BYTE, pos);
+      pos++;
+      return b;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public void readBytes(byte[] b, int offset, int len) throws IOException {
+    try {
+      MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, pos, b, offset, len);
+      pos += len;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    try {
+      final short v = segment.get(shortLayout, pos);
+      pos += Short.BYTES;
+      return v;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    try {
+      final int v = segment.get(intLayout, pos);
+      pos += Integer.BYTES;
+      return v;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    try {
+      final long v = segment.get(longLayout, pos);
+      pos += Long.BYTES;
+      return v;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    try {
+      final float v = segment.get(floatLayout, pos);
+      pos += Float.BYTES;
+      return v;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public void readFloats(float[] dst, int offset, int len) throws IOException {
+    try {
+      MemorySegment.copy(segment, floatLayout, pos, dst, offset, len);
+      pos += (long) len * Float.BYTES;
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("read past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public byte readByte(long pos) throws IOException {
+    try {
+      return segment.get(ValueLayout.JAVA_BYTE, pos);
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("seek past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public short readShort(long pos) throws IOException {
+    try {
+      return segment.get(shortLayout, pos);
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("seek past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public int readInt(long pos) throws IOException {
+    try {
+      return segment.get(intLayout, pos);
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("seek past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public long readLong(long pos) throws IOException {
+    try {
+      return segment.get(longLayout, pos);
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("seek past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public float readFloat(long pos) throws IOException {
+    try {
+      return segment.get(floatLayout, pos);
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("seek past EOF: " + this);
+    } catch (IllegalStateException e) {
+      throw alreadyClosed(e);
+    }
+  }
+
+  @Override
+  public long getFilePointer() {
+    ensureOpen();
+    return pos;
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos < 0) {
+      throw new IllegalArgumentException("Seeking to negative position: " + pos + " " + this);
+    } else if (pos > length) {
+      throw new EOFException("seek past EOF: " + this);
+    }
+    this.pos = pos;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public MemorySegmentResourceInput clone() {
+    ensureOpen();
+    final MemorySegmentResourceInput clone = (MemorySegmentResourceInput) super.clone();
+    clone.isClone = true;
+    return clone;
+  }
+
+  /**
+   * Creates a slice of this input, sharing its mapping, with the given description, offset, and length.
+   * The slice is seeked to the beginning.
+   */
+  @Override
+  public MemorySegmentResourceInput slice(String sliceDescription, long offset, long length) {
+    if (offset < 0 || length < 0 || offset + length > this.length) {
+      throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: offset=" + offset +
+        ",length=" + length + ",fileLength=" + this.length + ": " + this);
+    }
+    ensureOpen();
+    final MemorySegmentResourceInput slice = new MemorySegmentResourceInput(getFullSliceDescription(sliceDescription),
+      arena, segment.asSlice(offset, length), order);
+    slice.isClone = true;
+    return slice;
+  }
+
+  /** Unmaps the file if this is the original input, clones and slices are not closed. */
+  @Override
+  public void close() throws IOException {
+    if (isClone || !arena.scope().isAlive()) {
+      return;
+    }
+    arena.close();
+  }
+
+}
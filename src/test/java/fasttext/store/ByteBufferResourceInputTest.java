@@ -0,0 +1,91 @@
+package fasttext.store;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class ByteBufferResourceInputTest {
+
+  private static final int CHUNK_SIZE_POWER = 4;
+
+  private static final int COUNT = 16;
+
+  private static ByteBuffer floats(ByteOrder order) {
+    ByteBuffer bytes = ByteBuffer.allocate(COUNT * Float.BYTES + 1).order(order);
+    // shift the floats by one byte, so that some of them straddle two chunks
+    bytes.put((byte) 0);
+    for (int i = 0; i < COUNT; i++) {
+      bytes.putFloat(i + 0.5f);
+    }
+    return bytes;
+  }
+
+  /** Splits the buffer into chunks of 2^{@link #CHUNK_SIZE_POWER} bytes, as mapped by {@link MMapFile} */
+  private static ByteBufferResourceInput chunked(ByteBuffer bytes) {
+    int chunkSize = 1 << CHUNK_SIZE_POWER;
+    ByteBuffer[] buffers = new ByteBuffer[(bytes.capacity() >>> CHUNK_SIZE_POWER) + 1];
+    for (int i = 0; i < buffers.length; i++) {
+      bytes.limit(Math.min(bytes.capacity(), (i + 1) * chunkSize));
+      bytes.position(i * chunkSize);
+      buffers[i] = bytes.slice().order(bytes.order());
+    }
+    return ByteBufferResourceInput.newInstance("test", buffers, bytes.capacity(), CHUNK_SIZE_POWER);
+  }
+
+  private static void assertStraddlingReads(ByteOrder order) throws IOException {
+    ByteBuffer bytes = floats(order);
+    try (ByteBufferResourceInput in = chunked(bytes)) {
+      in.seek(1L);
+      for (int i = 0; i < COUNT; i++) {
+        assertEquals(i + 0.5f, in.readFloat(), 0f);
+      }
+      for (int i = 0; i < COUNT; i++) {
+        long pos = 1L + i * Float.BYTES;
+        assertEquals(Float.floatToIntBits(i + 0.5f), in.readInt(pos));
+        assertEquals(bytes.getShort((int) pos), in.readShort(pos));
+        if (i < COUNT - 1) {
+          assertEquals(bytes.getLong((int) pos), in.readLong(pos));
+        }
+      }
+      in.seek(1L);
+      for (int i = 0; i < COUNT / 2; i++) {
+        assertEquals(bytes.getLong(1 + i * Long.BYTES), in.readLong());
+      }
+    }
+  }
+
+  @Test
+  public void testBigEndianStraddlingReads() throws IOException {
+    assertStraddlingReads(ByteOrder.BIG_ENDIAN);
+  }
+
+  @Test
+  public void testLittleEndianStraddlingReads() throws IOException {
+    assertStraddlingReads(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Test
+  public void testLittleEndianMappedFile() throws IOException {
+    Path path = Files.createTempFile("fasttext4j", ".bin");
+    try {
+      Files.write(path, floats(ByteOrder.LITTLE_ENDIAN).array());
+      try (ResourceInput in = new MMapFile(path, 1 << CHUNK_SIZE_POWER).openInput(ByteOrder.LITTLE_ENDIAN)) {
+        in.seek(1L);
+        float[] values = new float[COUNT];
+        in.readFloats(values, 0, COUNT);
+        for (int i = 0; i < COUNT; i++) {
+          assertEquals(i + 0.5f, values[i], 0f);
+        }
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+}